@@ -0,0 +1,410 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Replays every game in a set of PGN files in one JVM and writes one
+ * record per game, with the chosen tags and the final position, as CSV or
+ * newline-delimited JSON. Run it as `PgnReader batch ...` or directly:
+ *
+ *     java BatchCommand [--format csv|ndjson] [--tags Event,White,...]
+ *         [--threads n] [--output file] [--errors file] [--metrics]
+ *         [--cache plies] path...
+ *
+ * Each path may be a file, a directory, which is searched for PGN files
+ * as by `BatchReplay.pgnFiles`, or a glob such as `games/2024-*.pgn.gz`
+ * or `archive/**.pgn`. Output is buffered and games are written in input
+ * order. A missing tag is an empty CSV field or a JSON null.
+ *
+ * A game with a move that cannot be played is left out of the output and
+ * reported instead, as a `PgnError` line on standard error or, with
+ * `--errors`, as a record with the columns File, Game, Ply, Token and
+ * Reason in the output format. Games are numbered from 1 within each
+ * file. A file that cannot be read is reported the same way, as game 1
+ * at ply 0 if it fails before its first game, and the batch goes on with
+ * the next file.
+ *
+ * `--metrics` turns on `PgnMetrics` and logs throughput to standard error
+ * every 10 seconds and at the end.
+ *
+ * `--cache` shares the positions of the first plies of each game between
+ * the replay threads in a `ReplayCache`, so that games with a common
+ * opening do not replay it. It pays off on databases of games from a few
+ * openings; its hit rate is logged with the metrics.
+ */
+public class BatchCommand {
+
+    /** The tags written when `--tags` is not given: the Seven Tag Roster. */
+    public static final List<String> DEFAULT_TAGS = Arrays.asList("Event",
+        "Site", "Date", "Round", "White", "Black", "Result");
+
+    /** The name of the column holding the final position. */
+    public static final String FEN_COLUMN = "FinalFEN";
+
+    private static final String GLOB_CHARS = "*?[{";
+    private static final int METRICS_PERIOD = 10; // seconds
+    private static final int CACHE_POSITIONS = 1 << 18; // 10 MiB
+
+    private static final String USAGE = "usage: PgnReader batch"
+        + " [--format csv|ndjson] [--tags name,...] [--threads n]"
+        + " [--output file] [--errors file] [--metrics] [--cache plies]"
+        + " path...";
+
+    private final List<String> tags;
+    private final boolean json;
+    private final int threads;
+    private final ReplayCache cache;
+
+    /**
+     * @param tags the tags to write for each game, in column order
+     * @param json whether to write NDJSON rather than CSV
+     * @param threads the number of threads replaying games
+     */
+    public BatchCommand(List<String> tags, boolean json, int threads) {
+        this(tags, json, threads, null);
+    }
+
+    /**
+     * @param cache opening positions shared by the replay threads, or
+     *     null for none
+     */
+    public BatchCommand(List<String> tags, boolean json, int threads,
+        ReplayCache cache) {
+        this.tags = tags;
+        this.json = json;
+        this.threads = threads;
+        this.cache = cache;
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Parses the command line, runs the batch and returns the exit status:
+     * 0 on success, even if some input files could not be read, 1 if
+     * listing the inputs or writing failed and 2 for a bad command line.
+     */
+    public static int run(String[] args) {
+        List<String> tags = DEFAULT_TAGS;
+        String format = "csv";
+        int threads = Runtime.getRuntime().availableProcessors();
+        String output = null;
+        String errors = null;
+        boolean metrics = false;
+        int cachePlies = 0;
+        List<String> paths = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--format")) {
+                    format = option(args, ++i);
+                } else if (arg.equals("--tags")) {
+                    tags = Arrays.asList(option(args, ++i).split(","));
+                } else if (arg.equals("--threads")) {
+                    threads = Integer.parseInt(option(args, ++i));
+                } else if (arg.equals("--output")) {
+                    output = option(args, ++i);
+                } else if (arg.equals("--errors")) {
+                    errors = option(args, ++i);
+                } else if (arg.equals("--metrics")) {
+                    metrics = true;
+                } else if (arg.equals("--cache")) {
+                    cachePlies = Integer.parseInt(option(args, ++i));
+                    if (cachePlies < ReplayCache.STEP) {
+                        throw new IllegalArgumentException("--cache must be"
+                            + " at least " + ReplayCache.STEP);
+                    }
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("unknown option "
+                        + arg);
+                } else {
+                    paths.add(arg);
+                }
+            }
+            if (!format.equals("csv") && !format.equals("ndjson")) {
+                throw new IllegalArgumentException("unknown format "
+                    + format);
+            }
+            if (threads < 1 || paths.isEmpty()) {
+                throw new IllegalArgumentException(paths.isEmpty()
+                    ? "no input given" : "--threads must be positive");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        ReplayCache cache = cachePlies == 0 ? null
+            : new ReplayCache(CACHE_POSITIONS, cachePlies);
+        BatchCommand command = new BatchCommand(tags,
+            format.equals("ndjson"), threads, cache);
+        try {
+            List<Path> files = new ArrayList<>();
+            for (String path : paths) {
+                files.addAll(expand(path));
+            }
+            if (metrics) {
+                PgnMetrics.enable();
+                PgnMetrics.startLogging(METRICS_PERIOD, System.err);
+            }
+            long start = System.nanoTime();
+            long games;
+            ErrorLog errorLog = new ErrorLog(errors == null ? null
+                : Files.newOutputStream(Paths.get(errors)), command.json);
+            try {
+                if (output == null) {
+                    games = command.write(files, System.out, errorLog);
+                } else {
+                    try (OutputStream out = Files.newOutputStream(
+                        Paths.get(output))) {
+                        games = command.write(files, out, errorLog);
+                    }
+                }
+            } finally {
+                errorLog.close();
+            }
+            System.err.format("%d games from %d files in %.1f s,"
+                + " %d skipped%n", games, files.size(),
+                (System.nanoTime() - start) / 1e9, errorLog.count);
+            if (metrics) {
+                System.err.println(PgnMetrics.summary());
+                System.err.println(PgnMetrics.moveTypeSummary());
+                if (cache != null) {
+                    System.err.println("pgn replay cache: " + cache);
+                }
+            }
+            return 0;
+        } catch (IOException e) {
+            System.err.format("IOException: %s%n", e);
+            return 1;
+        } catch (UncheckedIOException e) {
+            System.err.format("IOException: %s%n", e.getCause());
+            return 1;
+        }
+    }
+
+    private static String option(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(args[i - 1]
+                + " needs a value");
+        }
+        return args[i];
+    }
+
+    /**
+     * Expands a command line path into the files it names, in sorted
+     * order: a file, the PGN files under a directory, or the files
+     * matching a glob.
+     */
+    public static List<Path> expand(String path) throws IOException {
+        if (!isGlob(path)) {
+            return BatchReplay.pgnFiles(Paths.get(path));
+        }
+        // walk from the last directory before the first wildcard
+        String separator = FileSystems.getDefault().getSeparator();
+        int wildcard = 0;
+        while (GLOB_CHARS.indexOf(path.charAt(wildcard)) < 0) {
+            wildcard++;
+        }
+        int cut = path.lastIndexOf(separator, wildcard);
+        Path base = Paths.get(cut < 0 ? "" : cut == 0 ? separator
+            : path.substring(0, cut));
+        PathMatcher matcher =
+            FileSystems.getDefault().getPathMatcher("glob:" + path);
+        if (!Files.isDirectory(base)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> walk = Files.walk(base)) {
+            return walk.filter(p -> Files.isRegularFile(p))
+                .filter(matcher::matches)
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isGlob(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            if (GLOB_CHARS.indexOf(path.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replays every game in files and writes its record to out, after a
+     * header line for CSV. out is flushed but not closed. Games that
+     * cannot be replayed, and files that cannot be read, go to errors
+     * instead.
+     *
+     * @return the number of games written
+     */
+    public long write(List<Path> files, OutputStream out,
+        PgnError.Handler errors) throws IOException {
+        Writer writer = new BufferedWriter(
+            new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        StringBuilder line = new StringBuilder(256);
+        if (!json) {
+            for (String tag : tags) {
+                appendCsv(tag, line).append(',');
+            }
+            line.append(FEN_COLUMN).append('\n');
+            writer.append(line);
+        }
+        IngestPipeline pipeline =
+            new IngestPipeline(threads, 16, 64 * threads, true, cache);
+        long games = pipeline.run(files, game -> {
+            line.setLength(0);
+            appendRecord(game.header, game.fen, line);
+            writer.append(line);
+        }, errors);
+        writer.flush();
+        return games;
+    }
+
+    private void appendRecord(PgnHeader header, String fen,
+        StringBuilder line) {
+        if (json) {
+            line.append('{');
+            for (String tag : tags) {
+                appendJson(tag, line).append(':');
+                appendJson(header.get(tag), line).append(',');
+            }
+            appendJson(FEN_COLUMN, line).append(':');
+            appendJson(fen, line).append("}\n");
+        } else {
+            for (String tag : tags) {
+                appendCsv(header.get(tag), line).append(',');
+            }
+            appendCsv(fen, line).append('\n');
+        }
+    }
+
+    /**
+     * Writes each error as a record to a file, or as a line to standard
+     * error if there is no file, and counts them.
+     */
+    private static class ErrorLog implements PgnError.Handler {
+        static final String HEADER = "File,Game,Ply,Token,Reason\n";
+
+        final Writer writer;
+        final boolean json;
+        final StringBuilder line = new StringBuilder();
+        long count = 0;
+
+        ErrorLog(OutputStream out, boolean json) throws IOException {
+            this.writer = out == null ? null : new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            this.json = json;
+            if (writer != null && !json) {
+                writer.write(HEADER);
+            }
+        }
+
+        @Override
+        public void error(PgnError error) {
+            count++;
+            if (writer == null) {
+                System.err.println(error);
+                return;
+            }
+            line.setLength(0);
+            String game = Long.toString(error.gameIndex + 1);
+            String ply = Integer.toString(error.ply);
+            if (json) {
+                line.append("{\"File\":");
+                appendJson(error.source, line).append(",\"Game\":")
+                    .append(game)
+                    .append(",\"Ply\":").append(ply).append(",\"Token\":");
+                appendJson(error.token, line).append(",\"Reason\":");
+                appendJson(error.reason, line).append("}\n");
+            } else {
+                appendCsv(error.source, line).append(',');
+                line.append(game).append(',').append(ply).append(',');
+                appendCsv(error.token, line).append(',');
+                appendCsv(error.reason, line).append('\n');
+            }
+            try {
+                writer.append(line);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Appends value as a CSV field, quoted only if it has to be (RFC
+     * 4180). A null value is an empty field.
+     */
+    static StringBuilder appendCsv(String value, StringBuilder sb) {
+        if (value == null) {
+            return sb;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return sb.append(value);
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        return sb.append('"');
+    }
+
+    /**
+     * Appends value as a JSON string, or null.
+     */
+    static StringBuilder appendJson(String value, StringBuilder sb) {
+        if (value == null) {
+            return sb.append("null");
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else if (c == '\t') {
+                sb.append("\\t");
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"');
+    }
+}
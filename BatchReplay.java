@@ -0,0 +1,273 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Replays every game in a set of PGN files on a fork-join pool.
+ *
+ * Games are split off the input sequentially by `PgnGameReader` and handed
+ * to the pool in small batches, so the reading thread never holds more
+ * than a bounded window of games. Results are delivered either in input
+ * order or as soon as each batch finishes. The pool itself is an `Engine`,
+ * which `IngestPipeline` also replays its games on.
+ */
+public class BatchReplay {
+
+    /**
+     * Receives the final position of each game, on the thread that called
+     * `replay`.
+     */
+    public interface ResultSink {
+        void accept(long gameIndex, String game, String fen);
+    }
+
+    private static final int BATCH_SIZE = 64;
+
+    private final int parallelism;
+    private final boolean ordered;
+
+    public BatchReplay(int parallelism, boolean ordered) {
+        this.parallelism = parallelism;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Expands path into the PGN files it names: the file itself, or every
+     * file under a directory for which `PgnInput.isPgnFile` holds, in
+     * sorted order.
+     */
+    public static List<Path> pgnFiles(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            List<Path> single = new ArrayList<>();
+            single.add(path);
+            return single;
+        }
+        try (Stream<Path> walk = Files.walk(path)) {
+            return walk.filter(p -> Files.isRegularFile(p))
+                .filter(PgnInput::isPgnFile)
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Replays every game in files and passes each final position to sink.
+     *
+     * @param files the PGN files to read, in order
+     * @param sink where results are delivered
+     * @return the number of games replayed
+     */
+    public long replay(List<Path> files, ResultSink sink) throws IOException {
+        long gameIndex = 0;
+        Engine.Sink<Replayed> deliver =
+            game -> sink.accept(game.index, game.text, game.fen);
+        try (Engine<Replayed> engine =
+            new Engine<>(parallelism, ordered, BatchReplay::replay)) {
+            List<Replayed> batch = new ArrayList<>(BATCH_SIZE);
+            for (Path file : files) {
+                try (PgnGameReader games = new PgnGameReader(file)) {
+                    while (games.hasNext()) {
+                        batch.add(new Replayed(gameIndex++, games.next()));
+                        if (batch.size() == BATCH_SIZE) {
+                            engine.submit(batch, deliver);
+                            batch = new ArrayList<>(BATCH_SIZE);
+                        }
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                engine.submit(batch, deliver);
+            }
+            engine.finish(deliver);
+        }
+        return gameIndex;
+    }
+
+    private static void replay(List<Replayed> batch) {
+        Bitboard board = new Bitboard();
+        for (Replayed game : batch) {
+            game.fen = PgnReader.finalPosition(game.text, board);
+        }
+    }
+
+    private static class Replayed {
+        final long index;
+        final String text;
+        String fen;
+
+        Replayed(long index, String text) {
+            this.index = index;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Runs a step over batches of items on a fork-join pool and hands the
+     * items of each finished batch to a sink, on the thread that submits
+     * the batches: either in the order they were submitted or as soon as
+     * each finishes. At most four batches per pool thread are submitted
+     * and not yet delivered; `submit` waits, delivering, while there are
+     * that many.
+     *
+     * If the step throws, the exception is rethrown by the next call to
+     * `submit`, `poll` or `finish` that would have delivered its batch.
+     */
+    static class Engine<T> implements AutoCloseable {
+
+        /**
+         * Receives the items of finished batches.
+         */
+        interface Sink<T> {
+            void accept(T item) throws IOException;
+        }
+
+        private final ForkJoinPool pool;
+        private final boolean ordered;
+        private final int window;
+        private final Consumer<List<T>> step;
+        // in ordered mode, the undelivered batches in submission order
+        private final ArrayDeque<Batch<T>> pending = new ArrayDeque<>();
+        private final BlockingQueue<Batch<T>> finished =
+            new LinkedBlockingQueue<>();
+        private int undelivered = 0;
+
+        /**
+         * @param parallelism the number of pool threads
+         * @param ordered whether batches are delivered in submission order
+         * @param step what to do with each batch on the pool
+         */
+        Engine(int parallelism, boolean ordered, Consumer<List<T>> step) {
+            this.pool = new ForkJoinPool(parallelism);
+            this.ordered = ordered;
+            this.window = parallelism * 4;
+            this.step = step;
+        }
+
+        /**
+         * Hands a batch of items to the pool, first delivering finished
+         * batches to sink and waiting for one to finish if the window is
+         * full. The list belongs to the engine from then on.
+         */
+        void submit(List<T> items, Sink<T> sink) throws IOException {
+            poll(sink);
+            while (undelivered >= window) {
+                complete(take(), sink);
+            }
+            Batch<T> batch = new Batch<>(items);
+            undelivered++;
+            if (ordered) {
+                pending.add(batch);
+            }
+            pool.execute(() -> {
+                try {
+                    step.accept(batch.items);
+                } catch (Throwable t) {
+                    batch.error = t;
+                }
+                finished.add(batch);
+            });
+        }
+
+        /**
+         * Delivers the batches that have finished to sink, without waiting
+         * for the others.
+         */
+        void poll(Sink<T> sink) throws IOException {
+            for (Batch<T> batch = finished.poll(); batch != null;
+                batch = finished.poll()) {
+                complete(batch, sink);
+            }
+        }
+
+        /**
+         * Waits for a batch to finish, if any is still running, and
+         * delivers the batches that can then be delivered to sink.
+         */
+        void await(Sink<T> sink) throws IOException {
+            if (undelivered > 0) {
+                complete(take(), sink);
+            }
+        }
+
+        /**
+         * Waits for every submitted batch and delivers it to sink.
+         */
+        void finish(Sink<T> sink) throws IOException {
+            while (undelivered > 0) {
+                complete(take(), sink);
+            }
+        }
+
+        private Batch<T> take() {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return finished.take();
+                    } catch (InterruptedException e) {
+                        interrupted = true; // batches always finish
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void complete(Batch<T> batch, Sink<T> sink)
+            throws IOException {
+            batch.done = true;
+            if (!ordered) {
+                deliver(batch, sink);
+                return;
+            }
+            while (!pending.isEmpty() && pending.peek().done) {
+                deliver(pending.poll(), sink);
+            }
+        }
+
+        private void deliver(Batch<T> batch, Sink<T> sink)
+            throws IOException {
+            undelivered--;
+            Throwable error = batch.error;
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error instanceof Error) {
+                throw (Error) error;
+            } else if (error != null) {
+                throw new IllegalStateException(error);
+            }
+            for (T item : batch.items) {
+                sink.accept(item);
+            }
+        }
+
+        /**
+         * Stops the pool threads, abandoning any batches still running.
+         */
+        @Override
+        public void close() {
+            pool.shutdownNow();
+        }
+
+        private static class Batch<T> {
+            final List<T> items;
+            boolean done; // only used on the submitting thread
+            Throwable error;
+
+            Batch(List<T> items) {
+                this.items = items;
+            }
+        }
+    }
+}
@@ -0,0 +1,390 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A compact binary form of a PGN archive that can be read back without
+ * parsing any SAN.
+ *
+ * Each game is stored as a header block (its tag pairs) followed by one
+ * byte per move: the index of the move among the legal moves of the
+ * position, of which there are never more than 218, sorted by their
+ * `MoveGenerator` encoding. The sort pins the indices down, so files do
+ * not depend on the order the generator happens to produce moves in.
+ * Reading a game back replays those indices, so the only work per move is
+ * generating the legal moves, and the file is several times smaller than
+ * the PGN it came from.
+ *
+ * Layout, after a 4-byte magic number and a 4-byte format version,
+ * repeated per game:
+ *
+ * - tag count (varint), then each name and value as modified UTF-8
+ * - move count (varint), then one byte per move
+ *
+ * Comments, NAGs and variations are not kept. Every game starts from the
+ * standard position; a game set up from a FEN tag, with a tag name or
+ * value over 65535 bytes as modified UTF-8 or with a move that cannot be
+ * played, is left out and reported rather than stored in part.
+ */
+public class BinaryGameCodec {
+
+    private static final int MAGIC = 0x50474E42; // "PGNB"
+    private static final int VERSION = 1;
+
+    /** The reason given for a game with a FEN or SetUp "1" tag. */
+    public static final String SET_UP_POSITION =
+        "starts from a set-up position";
+
+    /** The reason given for a game with a tag too long to store. */
+    public static final String TAG_TOO_LONG =
+        "has a tag longer than 65535 bytes";
+
+    /**
+     * Converts every game in pgnFile that can be stored and writes the
+     * result to binFile, leaving the others out.
+     *
+     * @return the number of games written
+     */
+    public static long export(Path pgnFile, Path binFile) throws IOException {
+        return export(pgnFile, binFile, error -> { });
+    }
+
+    /**
+     * Converts every game in pgnFile like `export(Path, Path)`, reporting
+     * each game left out to errors: one with a move that cannot be
+     * played, at that move, one with a FEN or SetUp tag, with the reason
+     * `SET_UP_POSITION`, or one with a tag too long to store, with the
+     * reason `TAG_TOO_LONG`. Games are numbered from 0 in pgnFile.
+     *
+     * @return the number of games written
+     */
+    public static long export(Path pgnFile, Path binFile,
+        PgnError.Handler errors) throws IOException {
+        MappedPgnScanner scanner = new MappedPgnScanner(pgnFile);
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(binFile),
+                1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            Encoder encoder = new Encoder(scanner, out, errors,
+                pgnFile.toString());
+            scanner.scan(encoder);
+            if (encoder.failure != null) {
+                throw encoder.failure;
+            }
+            return encoder.games;
+        }
+    }
+
+    /**
+     * Writes the legal moves of board to moves in the order whose indices
+     * are stored, ascending by encoding, and returns how many there are.
+     *
+     * @param moves an array of at least `MoveGenerator.MAX_MOVES` entries
+     */
+    public static int legalMoves(Bitboard board, int[] moves) {
+        int count = MoveGenerator.generate(board, moves);
+        Arrays.sort(moves, 0, count);
+        return count;
+    }
+
+    /**
+     * Returns the index of a SAN move among the legal moves of board, or
+     * -1 if it matches none of them. When SAN leaves the origin ambiguous,
+     * the piece on the lowest square is chosen, as `Bitboard.apply` does.
+     *
+     * @param move a move decoded by `SanDecoder`
+     * @param moves the legal moves of board, from `legalMoves`
+     * @param count the number of entries in moves
+     */
+    public static int indexOf(Bitboard board, int move, int[] moves,
+        int count) {
+        if (move == SanDecoder.INVALID) {
+            return -1;
+        }
+        int type = SanDecoder.pieceType(move);
+        int to = SanDecoder.to(move);
+        int fromCol = SanDecoder.fromCol(move);
+        int fromRow = SanDecoder.fromRow(move);
+        int promotion = SanDecoder.promotion(move);
+        if (SanDecoder.isCastle(move)) {
+            int king = Long.numberOfTrailingZeros(
+                board.pieces[Bitboard.KING + 6 * board.sideToMove]);
+            type = Bitboard.KING;
+            to = SanDecoder.isKingSideCastle(move) ? king + 2 : king - 2;
+            fromCol = king & 7;
+        } else if (type == Bitboard.PAWN && fromCol < 0) {
+            fromCol = to & 7; // a pawn push stays on its file
+        }
+        for (int i = 0; i < count; i++) {
+            int from = MoveGenerator.from(moves[i]);
+            if (MoveGenerator.to(moves[i]) == to
+                && board.mailbox[from] % 6 == type
+                && MoveGenerator.promotion(moves[i]) == promotion
+                && (fromCol < 0 || (from & 7) == fromCol)
+                && (fromRow < 0 || (from >> 3) == fromRow)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class Encoder implements MappedPgnScanner.Handler {
+        final MappedPgnScanner scanner;
+        final DataOutputStream out;
+        final PgnError.Handler errors;
+        final String source;
+        final byte[] token = new byte[32];
+        final int[] legal = new int[MoveGenerator.MAX_MOVES];
+        String[] tags = new String[16];
+        int tagCount;
+        byte[] moves = new byte[256];
+        int moveCount;
+        boolean stopped;
+        final Bitboard board = new Bitboard();
+        long index = -1; // of the game in the PGN file
+        long games = 0;
+        IOException failure;
+
+        Encoder(MappedPgnScanner scanner, DataOutputStream out,
+            PgnError.Handler errors, String source) {
+            this.scanner = scanner;
+            this.out = out;
+            this.errors = errors;
+            this.source = source;
+        }
+
+        @Override
+        public void gameStart(long offset) {
+            board.reset();
+            tagCount = 0;
+            moveCount = 0;
+            stopped = false;
+            index++;
+        }
+
+        @Override
+        public void tag(long nameOffset, int nameLength, long valueOffset,
+            int valueLength) {
+            if (2 * tagCount + 2 > tags.length) {
+                tags = Arrays.copyOf(tags, tags.length * 2);
+            }
+            tags[2 * tagCount] = scanner.string(nameOffset, nameLength);
+            tags[2 * tagCount + 1] = PgnHeader.unescape(
+                scanner.string(valueOffset, valueLength));
+            String name = tags[2 * tagCount];
+            String value = tags[2 * tagCount + 1];
+            tagCount++;
+            if (stopped) {
+                return;
+            }
+            if (name.equals("FEN") || name.equals("SetUp")
+                && value.equals("1")) {
+                stopped = true;
+                errors.error(new PgnError(source, index, 0, null,
+                    SET_UP_POSITION));
+            } else if (utfLength(name) > 65535 || utfLength(value) > 65535) {
+                stopped = true; // writeUTF would throw
+                errors.error(new PgnError(source, index, 0, null,
+                    TAG_TOO_LONG));
+            }
+        }
+
+        @Override
+        public void move(long offset, int length) {
+            if (stopped) {
+                return;
+            }
+            int n = scanner.copy(offset, length, token, 0);
+            int count = legalMoves(board, legal);
+            int move = SanDecoder.decode(token, 0, n);
+            int i = indexOf(board, move, legal, count);
+            if (i < 0) {
+                stopped = true;
+                errors.error(new PgnError(source, index, moveCount + 1,
+                    scanner.string(offset, length),
+                    move == SanDecoder.INVALID ? PgnError.UNRECOGNIZED_MOVE
+                        : board.origin(move, board.sideToMove()) < 0
+                            ? PgnError.NO_PIECE : PgnError.ILLEGAL_MOVE));
+                return;
+            }
+            board.makeMove(legal[i]);
+            if (moveCount == moves.length) {
+                moves = Arrays.copyOf(moves, moveCount * 2);
+            }
+            moves[moveCount++] = (byte) i;
+        }
+
+        @Override
+        public void gameEnd(long start, long end) {
+            if (failure != null || stopped) {
+                return;
+            }
+            try {
+                writeVarint(out, tagCount);
+                for (int i = 0; i < 2 * tagCount; i++) {
+                    out.writeUTF(tags[i]);
+                }
+                writeVarint(out, moveCount);
+                out.write(moves, 0, moveCount);
+                games++;
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+
+    // the length of s as written by DataOutput.writeUTF
+    private static int utfLength(String s) {
+        int n = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x800) {
+                n += 2;
+            } else if (c >= 0x80 || c == 0) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static void writeVarint(DataOutputStream out, int n)
+        throws IOException {
+        while ((n & ~0x7F) != 0) {
+            out.writeByte((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        out.writeByte(n);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int n = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            n |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return n;
+            }
+        }
+        throw new IOException("malformed length");
+    }
+
+    /**
+     * Reads the games of a file written by `export`, one at a time:
+     *
+     *     try (BinaryGameCodec.Reader r = new BinaryGameCodec.Reader(p)) {
+     *         while (r.next()) {
+     *             ... r.header(), r.moves(), r.finalBoard() ...
+     *         }
+     *     }
+     */
+    public static class Reader implements Closeable {
+        private final DataInputStream in;
+        private final int[] legal = new int[MoveGenerator.MAX_MOVES];
+        private long game = -1;
+        private PgnHeader header;
+        private byte[] indices = new byte[256];
+        private int moveCount;
+        private int[] moves;
+        private Bitboard finalBoard;
+
+        public Reader(Path binFile) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(binFile), 1 << 16));
+            if (in.readInt() != MAGIC) {
+                in.close();
+                throw new IOException("not a binary game file: " + binFile);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                in.close();
+                throw new IOException("unsupported binary game file version "
+                    + version + ": " + binFile);
+            }
+        }
+
+        /**
+         * Advances to the next game, returning false at the end of the
+         * file.
+         */
+        public boolean next() throws IOException {
+            int tagCount;
+            try {
+                tagCount = readVarint(in);
+            } catch (EOFException e) {
+                return false;
+            }
+            game++;
+            header = new PgnHeader();
+            for (int i = 0; i < tagCount; i++) {
+                header.add(in.readUTF(), in.readUTF());
+            }
+            moveCount = readVarint(in);
+            if (moveCount > indices.length) {
+                indices = new byte[Math.max(moveCount, indices.length * 2)];
+            }
+            in.readFully(indices, 0, moveCount);
+            moves = null;
+            finalBoard = null;
+            return true;
+        }
+
+        public PgnHeader header() {
+            return header;
+        }
+
+        public int moveCount() {
+            return moveCount;
+        }
+
+        /**
+         * Returns the moves of the current game in `MoveGenerator`'s
+         * encoding.
+         */
+        public int[] moves() throws IOException {
+            if (moves == null) {
+                replay();
+            }
+            return moves;
+        }
+
+        /**
+         * Returns the position at the end of the current game.
+         */
+        public Bitboard finalBoard() throws IOException {
+            if (finalBoard == null) {
+                replay();
+            }
+            return finalBoard;
+        }
+
+        private void replay() throws IOException {
+            Bitboard board = new Bitboard();
+            int[] played = new int[moveCount];
+            for (int i = 0; i < moveCount; i++) {
+                int count = legalMoves(board, legal);
+                int index = indices[i] & 0xFF;
+                if (index >= count) {
+                    throw new IOException("corrupt move " + (i + 1)
+                        + " in game " + game);
+                }
+                played[i] = legal[index];
+                board.makeMove(played[i]);
+            }
+            moves = played;
+            finalBoard = board;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
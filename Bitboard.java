@@ -0,0 +1,768 @@
+/**
+ * A chess position stored as one 64-bit bitboard per piece type and color,
+ * plus a square-indexed mailbox for constant time lookups.
+ *
+ * Squares are numbered the same way as the `char[][]` boards used by
+ * `PgnReader`: square = row * 8 + column, where row 0 is rank 8 and column
+ * 0 is the a-file. Pieces are numbered by their index in `PIECES`.
+ */
+public class Bitboard implements BoardView {
+
+    public static final String PIECES = "PNBRQKpnbrqk";
+    public static final int PAWN = 0;
+    public static final int KNIGHT = 1;
+    public static final int BISHOP = 2;
+    public static final int ROOK = 3;
+    public static final int QUEEN = 4;
+    public static final int KING = 5;
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+    public static final int EMPTY = -1;
+
+    static final long[] KNIGHT_ATTACKS = new long[64];
+    static final long[] KING_ATTACKS = new long[64];
+    static final long[][] PAWN_ATTACKS = new long[2][64];
+
+    // rays indexed by direction then square; the first four directions
+    // move towards higher square numbers, the last four towards lower ones
+    private static final int[] ROW_STEP = {1, 0, 1, 1, -1, 0, -1, -1};
+    private static final int[] COL_STEP = {0, 1, 1, -1, 0, -1, 1, -1};
+    private static final long[][] RAYS = new long[8][64];
+    private static final int[] ROOK_DIRECTIONS = {0, 1, 4, 5};
+    private static final int[] BISHOP_DIRECTIONS = {2, 3, 6, 7};
+    private static final int[] OPPOSITE = {4, 5, 7, 6, 0, 1, 3, 2};
+
+    // squares strictly between two squares on a line, and the whole line
+    // through them; both are 0 for squares that do not share a line
+    static final long[][] BETWEEN = new long[64][64];
+    static final long[][] LINE = new long[64][64];
+
+    public static final int WHITE_KING_SIDE = 1;
+    public static final int WHITE_QUEEN_SIDE = 2;
+    public static final int BLACK_KING_SIDE = 4;
+    public static final int BLACK_QUEEN_SIDE = 8;
+
+    // castling rights kept when a piece moves from or to each square
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        java.util.Arrays.fill(CASTLING_MASK, 15);
+        CASTLING_MASK[56] = ~WHITE_QUEEN_SIDE & 15;
+        CASTLING_MASK[60] = ~(WHITE_KING_SIDE | WHITE_QUEEN_SIDE) & 15;
+        CASTLING_MASK[63] = ~WHITE_KING_SIDE & 15;
+        CASTLING_MASK[0] = ~BLACK_QUEEN_SIDE & 15;
+        CASTLING_MASK[4] = ~(BLACK_KING_SIDE | BLACK_QUEEN_SIDE) & 15;
+        CASTLING_MASK[7] = ~BLACK_KING_SIDE & 15;
+        int[][] knightSteps = {{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2},
+            {1, -2}, {1, 2}, {2, -1}, {2, 1}};
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq >> 3;
+            int col = sq & 7;
+            for (int[] step : knightSteps) {
+                KNIGHT_ATTACKS[sq] |= bit(row + step[0], col + step[1]);
+            }
+            for (int dr = -1; dr <= 1; dr++) {
+                for (int dc = -1; dc <= 1; dc++) {
+                    if (dr != 0 || dc != 0) {
+                        KING_ATTACKS[sq] |= bit(row + dr, col + dc);
+                    }
+                }
+            }
+            // a white pawn attacks towards row 0, a black one towards row 7
+            PAWN_ATTACKS[WHITE][sq] = bit(row - 1, col - 1)
+                | bit(row - 1, col + 1);
+            PAWN_ATTACKS[BLACK][sq] = bit(row + 1, col - 1)
+                | bit(row + 1, col + 1);
+            for (int d = 0; d < 8; d++) {
+                int r = row + ROW_STEP[d];
+                int c = col + COL_STEP[d];
+                while (r >= 0 && r < 8 && c >= 0 && c < 8) {
+                    RAYS[d][sq] |= 1L << (r * 8 + c);
+                    r += ROW_STEP[d];
+                    c += COL_STEP[d];
+                }
+            }
+        }
+        for (int a = 0; a < 64; a++) {
+            for (int d = 0; d < 8; d++) {
+                long ray = RAYS[d][a];
+                long line = ray | RAYS[OPPOSITE[d]][a] | (1L << a);
+                while (ray != 0) {
+                    int b = Long.numberOfTrailingZeros(ray);
+                    ray &= ray - 1;
+                    BETWEEN[a][b] = RAYS[d][a] & ~RAYS[d][b] & ~(1L << b);
+                    LINE[a][b] = line;
+                }
+            }
+        }
+    }
+
+    // undoMoves: origin + 1, destination, piece, captured piece + 1, and
+    // whether the capture was en passant
+    private static final int UNDO_TO_SHIFT = 7;
+    private static final int UNDO_PIECE_SHIFT = 13;
+    private static final int UNDO_CAPTURED_SHIFT = 17;
+    private static final int UNDO_EN_PASSANT = 1 << 21;
+    private static final int[] NO_UNDO = {};
+    private static final long[] NO_UNDO_HASHES = {};
+
+    private static final Bitboard START = new Bitboard();
+
+    final long[] pieces = new long[12];
+    final long[] colors = new long[2];
+    long occupied;
+    final byte[] mailbox = new byte[64];
+    int sideToMove = WHITE;
+    int castling;
+    int epSquare = -1;
+    int halfmoveClock = 0;
+    int fullmoveNumber = 1;
+    long hash;
+
+    // one entry per move played, so moves can be taken back in order:
+    // the move (UNDO_* layout), the state it replaced and the old hash;
+    // allocated on the first move so copies used as snapshots stay small
+    private int[] undoMoves = NO_UNDO;
+    private int[] undoStates = NO_UNDO;
+    private long[] undoHashes = NO_UNDO_HASHES;
+    private int undoSize = 0;
+
+    /**
+     * Creates a board set up in the standard starting position.
+     */
+    public Bitboard() {
+        this(PgnReader.initializeBoard());
+    }
+
+    /**
+     * Creates a board holding the same pieces as a `char[][]` board, with
+     * white to move. Castling rights are assumed for every king and rook
+     * still on its starting square.
+     */
+    public Bitboard(char[][] board) {
+        java.util.Arrays.fill(mailbox, (byte) EMPTY);
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                int piece = PIECES.indexOf(board[row][col]);
+                if (board[row][col] != ' ' && piece >= 0) {
+                    put(piece, row * 8 + col);
+                }
+            }
+        }
+        if (board[7][4] == 'K' && board[7][7] == 'R') {
+            castling |= WHITE_KING_SIDE;
+        }
+        if (board[7][4] == 'K' && board[7][0] == 'R') {
+            castling |= WHITE_QUEEN_SIDE;
+        }
+        if (board[0][4] == 'k' && board[0][7] == 'r') {
+            castling |= BLACK_KING_SIDE;
+        }
+        if (board[0][4] == 'k' && board[0][0] == 'r') {
+            castling |= BLACK_QUEEN_SIDE;
+        }
+        hash ^= Zobrist.CASTLING[castling];
+    }
+
+    /**
+     * Creates a copy of another position.
+     */
+    public Bitboard(Bitboard other) {
+        set(other);
+    }
+
+    /**
+     * Makes this board a copy of another position, without allocating.
+     * Moves played on this board can no longer be taken back.
+     */
+    public void set(Bitboard other) {
+        System.arraycopy(other.pieces, 0, pieces, 0, pieces.length);
+        System.arraycopy(other.colors, 0, colors, 0, colors.length);
+        System.arraycopy(other.mailbox, 0, mailbox, 0, mailbox.length);
+        occupied = other.occupied;
+        sideToMove = other.sideToMove;
+        castling = other.castling;
+        epSquare = other.epSquare;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveNumber = other.fullmoveNumber;
+        hash = other.hash;
+        undoSize = 0;
+    }
+
+    /**
+     * Sets the board up in the standard starting position, without
+     * allocating, so one board can be reused for many games.
+     */
+    public void reset() {
+        set(START);
+    }
+
+    /**
+     * Writes the position, without its move history, to four longs of to
+     * from offset: the occupied squares, a 4-bit piece number for each
+     * occupied square in square order, and the side to move, castling
+     * rights, en passant square and move counters. A position with more
+     * than 32 pieces does not fit and is not written.
+     *
+     * @return whether the position was written
+     */
+    boolean pack(long[] to, int offset) {
+        if (Long.bitCount(occupied) > 32) {
+            return false;
+        }
+        to[offset] = occupied;
+        to[offset + 1] = 0;
+        to[offset + 2] = 0;
+        int n = 0;
+        for (long b = occupied; b != 0; b &= b - 1, n++) {
+            long piece = mailbox[Long.numberOfTrailingZeros(b)];
+            to[offset + 1 + (n >>> 4)] |= piece << (4 * (n & 15));
+        }
+        to[offset + 3] = sideToMove | castling << 1 | (epSquare + 1) << 5
+            | (long) halfmoveClock << 12 | (long) fullmoveNumber << 32;
+        return true;
+    }
+
+    /**
+     * Makes this board the position written by `pack` to four longs of
+     * from at offset, without allocating.
+     */
+    void unpack(long[] from, int offset) {
+        java.util.Arrays.fill(pieces, 0L);
+        colors[WHITE] = 0;
+        colors[BLACK] = 0;
+        occupied = 0;
+        java.util.Arrays.fill(mailbox, (byte) EMPTY);
+        hash = 0;
+        int n = 0;
+        for (long b = from[offset]; b != 0; b &= b - 1, n++) {
+            long codes = from[offset + 1 + (n >>> 4)];
+            put((int) (codes >>> (4 * (n & 15))) & 15,
+                Long.numberOfTrailingZeros(b));
+        }
+        long state = from[offset + 3];
+        sideToMove = (int) state & 1;
+        castling = (int) (state >>> 1) & 15;
+        epSquare = ((int) (state >>> 5) & 127) - 1;
+        halfmoveClock = (int) (state >>> 12) & 0xFFFFF;
+        fullmoveNumber = (int) (state >>> 32);
+        hash ^= Zobrist.CASTLING[castling] ^ enPassantKey();
+        if (sideToMove == BLACK) {
+            hash ^= Zobrist.BLACK_TO_MOVE;
+        }
+        undoSize = 0;
+    }
+
+    /**
+     * Creates a board from a position in Forsyth-Edwards Notation. The
+     * move counters may be left out.
+     *
+     * @param fen the position in FEN
+     * @return the position
+     * @throws IllegalArgumentException if fen cannot be parsed
+     */
+    public static Bitboard fromFen(String fen) {
+        String[] fields = fen.trim().split(" ");
+        String[] rows = fields[0].split("/");
+        if (fields.length < 4 || rows.length != 8) {
+            throw new IllegalArgumentException("bad FEN: " + fen);
+        }
+        char[][] board = new char[8][8];
+        for (int row = 0; row < 8; row++) {
+            int col = 0;
+            for (char c : rows[row].toCharArray()) {
+                if (c >= '1' && c <= '8') {
+                    for (int i = 0; i < c - '0' && col < 8; i++) {
+                        board[row][col++] = ' ';
+                    }
+                } else if (PIECES.indexOf(c) >= 0 && col < 8) {
+                    board[row][col++] = c;
+                } else {
+                    throw new IllegalArgumentException("bad FEN: " + fen);
+                }
+            }
+        }
+        Bitboard b = new Bitboard(board);
+        b.sideToMove = fields[1].equals("b") ? BLACK : WHITE;
+        b.castling = 0;
+        for (char c : fields[2].toCharArray()) {
+            int right = "KQkq".indexOf(c);
+            if (right >= 0) {
+                b.castling |= 1 << right;
+            }
+        }
+        b.epSquare = fields[3].equals("-") ? -1
+            : square(PgnReader.getRow(fields[3].charAt(1) - '0'),
+                PgnReader.getCol(fields[3].charAt(0)));
+        if (fields.length >= 6) {
+            b.halfmoveClock = Integer.parseInt(fields[4]);
+            b.fullmoveNumber = Integer.parseInt(fields[5]);
+        }
+        b.hash = b.computeHash();
+        return b;
+    }
+
+    private long computeHash() {
+        long h = Zobrist.CASTLING[castling] ^ enPassantKey();
+        if (sideToMove == BLACK) {
+            h ^= Zobrist.BLACK_TO_MOVE;
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            if (mailbox[sq] != EMPTY) {
+                h ^= Zobrist.PIECE_SQUARE[mailbox[sq]][sq];
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Returns the en passant key to hash into the position: as in
+     * Polyglot, only when a pawn of the side to move could capture en
+     * passant, so that the same position reached by different move orders
+     * hashes the same.
+     */
+    private long enPassantKey() {
+        if (epSquare < 0 || (PAWN_ATTACKS[1 - sideToMove][epSquare]
+            & pieces[PAWN + 6 * sideToMove]) == 0) {
+            return 0L;
+        }
+        return Zobrist.enPassant(epSquare);
+    }
+
+    private static long bit(int row, int col) {
+        if (row < 0 || row > 7 || col < 0 || col > 7) {
+            return 0L;
+        }
+        return 1L << (row * 8 + col);
+    }
+
+    public static int square(int row, int col) {
+        return row * 8 + col;
+    }
+
+    /**
+     * Returns the piece index for a piece letter of either case, given the
+     * color of the side moving it.
+     */
+    public static int pieceIndex(char letter, int color) {
+        return PIECES.indexOf(Character.toUpperCase(letter)) + 6 * color;
+    }
+
+    public static long rookAttacks(int sq, long occupied) {
+        return slidingAttacks(sq, occupied, ROOK_DIRECTIONS);
+    }
+
+    public static long bishopAttacks(int sq, long occupied) {
+        return slidingAttacks(sq, occupied, BISHOP_DIRECTIONS);
+    }
+
+    public static long queenAttacks(int sq, long occupied) {
+        return rookAttacks(sq, occupied) | bishopAttacks(sq, occupied);
+    }
+
+    private static long slidingAttacks(int sq, long occupied,
+        int[] directions) {
+        long attacks = 0L;
+        for (int d : directions) {
+            long ray = RAYS[d][sq];
+            long blockers = ray & occupied;
+            if (blockers != 0) {
+                // cut the ray off behind the nearest blocker
+                int first = d < 4 ? Long.numberOfTrailingZeros(blockers)
+                    : 63 - Long.numberOfLeadingZeros(blockers);
+                ray ^= RAYS[d][first];
+            }
+            attacks |= ray;
+        }
+        return attacks;
+    }
+
+    /**
+     * Returns the squares from which a piece of the given type (0 to 5)
+     * would attack sq on the current board.
+     */
+    public long attacksFrom(int type, int sq) {
+        if (type == KNIGHT) {
+            return KNIGHT_ATTACKS[sq];
+        } else if (type == BISHOP) {
+            return bishopAttacks(sq, occupied);
+        } else if (type == ROOK) {
+            return rookAttacks(sq, occupied);
+        } else if (type == QUEEN) {
+            return queenAttacks(sq, occupied);
+        } else {
+            return KING_ATTACKS[sq];
+        }
+    }
+
+    /**
+     * Returns the piece index on sq, or `EMPTY`.
+     */
+    @Override
+    public int pieceOn(int sq) {
+        return mailbox[sq];
+    }
+
+    @Override
+    public char charAt(int row, int col) {
+        int piece = mailbox[row * 8 + col];
+        return piece == EMPTY ? ' ' : PIECES.charAt(piece);
+    }
+
+    @Override
+    public int sideToMove() {
+        return sideToMove;
+    }
+
+    /**
+     * Returns the castling rights as a combination of `WHITE_KING_SIDE`,
+     * `WHITE_QUEEN_SIDE`, `BLACK_KING_SIDE` and `BLACK_QUEEN_SIDE`.
+     */
+    @Override
+    public int castlingRights() {
+        return castling;
+    }
+
+    /**
+     * Returns the square a pawn just passed over with a two square
+     * advance, or -1.
+     */
+    @Override
+    public int enPassantSquare() {
+        return epSquare;
+    }
+
+    @Override
+    public int halfmoveClock() {
+        return halfmoveClock;
+    }
+
+    @Override
+    public int fullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    /**
+     * Returns the Zobrist hash of the position, which is kept up to date
+     * incrementally as moves are played.
+     */
+    @Override
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * Returns a copy of this position as a `char[][]` board.
+     */
+    public char[][] toArray() {
+        char[][] board = new char[8][8];
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                board[row][col] = charAt(row, col);
+            }
+        }
+        return board;
+    }
+
+    void put(int piece, int sq) {
+        long b = 1L << sq;
+        pieces[piece] |= b;
+        colors[piece / 6] |= b;
+        occupied |= b;
+        mailbox[sq] = (byte) piece;
+        hash ^= Zobrist.PIECE_SQUARE[piece][sq];
+    }
+
+    void remove(int sq) {
+        int piece = mailbox[sq];
+        if (piece == EMPTY) {
+            return;
+        }
+        long b = ~(1L << sq);
+        pieces[piece] &= b;
+        colors[piece / 6] &= b;
+        occupied &= b;
+        mailbox[sq] = (byte) EMPTY;
+        hash ^= Zobrist.PIECE_SQUARE[piece][sq];
+    }
+
+    void move(int from, int to) {
+        int piece = mailbox[from];
+        remove(to);
+        remove(from);
+        put(piece, to);
+    }
+
+    /**
+     * Moves piece from one square to another and updates the side to move,
+     * castling rights, en passant square and move counters. Castling is a
+     * king move of two squares; from may be -1 if no origin was found, in
+     * which case the piece just appears on to.
+     */
+    void play(int piece, int from, int to, int promotion) {
+        int color = piece / 6;
+        int type = piece % 6;
+        boolean capture = mailbox[to] != EMPTY;
+        int undo = (from + 1) | (to << UNDO_TO_SHIFT)
+            | (piece << UNDO_PIECE_SHIFT)
+            | ((mailbox[to] + 1) << UNDO_CAPTURED_SHIFT);
+        pushUndo(undo);
+        hash ^= Zobrist.CASTLING[castling] ^ enPassantKey();
+        if (from >= 0) {
+            if (type == PAWN && !capture && ((from ^ to) & 7) != 0) {
+                int sq = (from & ~7) | (to & 7);
+                undoMoves[undoSize - 1] = undo | UNDO_EN_PASSANT
+                    | ((mailbox[sq] + 1) << UNDO_CAPTURED_SHIFT);
+                remove(sq); // en passant
+                capture = true;
+            } else if (type == KING && to - from == 2) {
+                move(from + 3, from + 1);
+            } else if (type == KING && from - to == 2) {
+                move(from - 4, from - 1);
+            }
+            remove(from);
+            castling &= CASTLING_MASK[from];
+        }
+        remove(to);
+        put(promotion == 0 ? piece : promotion + 6 * color, to);
+        castling &= CASTLING_MASK[to];
+        boolean doublePush = type == PAWN && from >= 0
+            && Math.abs(to - from) == 16;
+        epSquare = doublePush ? (from + to) / 2 : -1;
+        halfmoveClock = (type == PAWN || capture) ? 0 : halfmoveClock + 1;
+        if (color == BLACK) {
+            fullmoveNumber++;
+        }
+        hash ^= Zobrist.CASTLING[castling];
+        if (sideToMove != 1 - color) {
+            hash ^= Zobrist.BLACK_TO_MOVE;
+            sideToMove = 1 - color;
+        }
+        hash ^= enPassantKey();
+    }
+
+    private void pushUndo(int move) {
+        if (undoSize == undoMoves.length) {
+            int n = Math.max(undoSize * 2, 128);
+            undoMoves = java.util.Arrays.copyOf(undoMoves, n);
+            undoStates = java.util.Arrays.copyOf(undoStates, n);
+            undoHashes = java.util.Arrays.copyOf(undoHashes, n);
+        }
+        undoMoves[undoSize] = move;
+        undoStates[undoSize] = castling | ((epSquare + 1) << 4)
+            | (sideToMove << 11) | (halfmoveClock << 12);
+        undoHashes[undoSize] = hash;
+        undoSize++;
+    }
+
+    /**
+     * Takes back the last move played on this board, however it was
+     * played, restoring the position exactly without copying it.
+     *
+     * @throws IllegalStateException if there is no move to take back
+     */
+    public void unmakeMove() {
+        if (undoSize == 0) {
+            throw new IllegalStateException("no move to take back");
+        }
+        undoSize--;
+        int undo = undoMoves[undoSize];
+        int state = undoStates[undoSize];
+        int from = (undo & 127) - 1;
+        int to = (undo >>> UNDO_TO_SHIFT) & 63;
+        int piece = (undo >>> UNDO_PIECE_SHIFT) & 15;
+        int captured = ((undo >>> UNDO_CAPTURED_SHIFT) & 15) - 1;
+        remove(to);
+        if (from >= 0) {
+            put(piece, from);
+            if (piece % 6 == KING && to - from == 2) {
+                move(from + 1, from + 3);
+            } else if (piece % 6 == KING && from - to == 2) {
+                move(from - 1, from - 4);
+            }
+        }
+        if (captured != EMPTY) {
+            put(captured, (undo & UNDO_EN_PASSANT) != 0
+                ? (from & ~7) | (to & 7) : to);
+        }
+        if (piece / 6 == BLACK) {
+            fullmoveNumber--;
+        }
+        castling = state & 15;
+        epSquare = ((state >>> 4) & 127) - 1;
+        sideToMove = (state >>> 11) & 1;
+        halfmoveClock = state >>> 12;
+        hash = undoHashes[undoSize];
+    }
+
+    /**
+     * Plays a move decoded by `SanDecoder` for the side of the given color.
+     * Returns false, leaving the board unchanged, if move is `INVALID`.
+     * A move that no piece of color can make puts the piece on its target
+     * square without taking it from anywhere; see `tryApply`.
+     */
+    public boolean apply(int move, int color) {
+        if (move == SanDecoder.INVALID) {
+            return false;
+        }
+        apply(move, color, origin(move, color));
+        return true;
+    }
+
+    /**
+     * Plays a move like `apply`, but returns false, leaving the board
+     * unchanged, unless it is a legal move of color, the side to move.
+     * That rules out a move no piece can make, and also moves that one
+     * can only make by breaking the rules, such as capturing its own
+     * side's piece or castling after the king or rook has moved.
+     */
+    public boolean tryApply(int move, int color) {
+        if (move == SanDecoder.INVALID || color != sideToMove) {
+            return false;
+        }
+        int from = origin(move, color);
+        if (from < 0) {
+            return false;
+        }
+        int to = SanDecoder.to(move);
+        int promotion = SanDecoder.promotion(move);
+        boolean legal;
+        if (SanDecoder.isCastle(move)) {
+            to = SanDecoder.isKingSideCastle(move) ? from + 2 : from - 2;
+            legal = MoveGenerator.isLegalMove(this, from, to, 0);
+        } else if (SanDecoder.pieceType(move) == PAWN) {
+            legal = MoveGenerator.isLegalMove(this, from, to, promotion);
+        } else {
+            // origin found a piece that moves to `to` the way it moves, so
+            // what is left is the target square and the king's safety
+            legal = promotion == 0 && (colors[color] & (1L << to)) == 0
+                && MoveGenerator.isLegal(this, from, to);
+        }
+        if (!legal) {
+            return false;
+        }
+        apply(move, color, from);
+        return true;
+    }
+
+    private void apply(int move, int color, int from) {
+        if (SanDecoder.isCastle(move)) {
+            castle(color, SanDecoder.isKingSideCastle(move));
+        } else {
+            play(SanDecoder.pieceType(move) + 6 * color, from,
+                SanDecoder.to(move), SanDecoder.promotion(move));
+        }
+    }
+
+    /**
+     * Returns the square the piece of color making move, a move decoded
+     * by `SanDecoder`, starts from, or -1 if there is no such piece. For a
+     * castling move it is the square of the king.
+     */
+    public int origin(int move, int color) {
+        int to = SanDecoder.to(move);
+        int type = SanDecoder.pieceType(move);
+        if (SanDecoder.isCastle(move)) {
+            int king = row(color) + 4;
+            return mailbox[king] == KING + 6 * color ? king : -1;
+        } else if (type == PAWN && SanDecoder.fromCol(move) >= 0) {
+            return pawnCaptureOrigin(color, SanDecoder.fromCol(move), to);
+        } else if (type == PAWN) {
+            return pawnPushOrigin(color, to);
+        } else {
+            return pieceOrigin(type + 6 * color, to, SanDecoder.fromCol(move),
+                SanDecoder.fromRow(move));
+        }
+    }
+
+    /**
+     * Pushes a pawn of color forward to sq, promoting it to the piece type
+     * promotion unless that is 0.
+     */
+    public void pawnPush(int color, int sq, int promotion) {
+        play(PAWN + 6 * color, pawnPushOrigin(color, sq), sq, promotion);
+    }
+
+    private int pawnPushOrigin(int color, int sq) {
+        int pawn = PAWN + 6 * color;
+        int behind = color == WHITE ? 8 : -8;
+        int from = sq + behind;
+        if (from < 0 || from >= 64) {
+            return -1; // a push to the pawn's own back rank
+        }
+        if ((pieces[pawn] & (1L << from)) == 0 && from + behind >= 0
+            && from + behind < 64) {
+            from += behind; // two square advance
+        }
+        return mailbox[from] == pawn ? from : -1;
+    }
+
+    /**
+     * Captures onto sq with the pawn of color standing on fromCol, handling
+     * en passant and promotion.
+     */
+    public void pawnCapture(int color, int fromCol, int sq, int promotion) {
+        play(PAWN + 6 * color, pawnCaptureOrigin(color, fromCol, sq), sq,
+            promotion);
+    }
+
+    private int pawnCaptureOrigin(int color, int fromCol, int sq) {
+        int pawn = PAWN + 6 * color;
+        int behind = color == WHITE ? 8 : -8;
+        int from = ((sq + behind) & ~7) | fromCol;
+        if (from < 0 || from >= 64) {
+            return -1;
+        }
+        return mailbox[from] == pawn ? from : -1;
+    }
+
+    /**
+     * Moves a knight, bishop, rook, queen or king to sq. The origin is the
+     * piece that attacks sq, matches the optional origin column and row
+     * hints (-1 when not given) and is not pinned to its king.
+     */
+    public void pieceMove(int piece, int sq, int fromCol, int fromRow) {
+        play(piece, pieceOrigin(piece, sq, fromCol, fromRow), sq, 0);
+    }
+
+    private int pieceOrigin(int piece, int sq, int fromCol, int fromRow) {
+        long candidates = pieces[piece] & attacksFrom(piece % 6, sq);
+        if (fromCol >= 0) {
+            candidates &= 0x0101010101010101L << fromCol;
+        }
+        if (fromRow >= 0) {
+            candidates &= 0xFFL << (fromRow * 8);
+        }
+        if (Long.bitCount(candidates) > 1) {
+            // SAN only disambiguates between legal moves, so drop pieces
+            // that cannot move without exposing their king
+            long legal = candidates;
+            for (long c = candidates; c != 0; c &= c - 1) {
+                int from = Long.numberOfTrailingZeros(c);
+                if (!MoveGenerator.isLegal(this, from, sq)) {
+                    legal &= ~(1L << from);
+                }
+            }
+            candidates = legal != 0 ? legal : candidates;
+        }
+        return candidates != 0 ? Long.numberOfTrailingZeros(candidates) : -1;
+    }
+
+    /**
+     * Plays a move generated by `MoveGenerator`.
+     */
+    public void makeMove(int move) {
+        int from = MoveGenerator.from(move);
+        play(mailbox[from], from, MoveGenerator.to(move),
+            MoveGenerator.promotion(move));
+    }
+
+    public void castle(int color, boolean kingSide) {
+        int king = row(color) + 4;
+        play(KING + 6 * color, king, kingSide ? king + 2 : king - 2, 0);
+    }
+
+    private static int row(int color) {
+        return color == WHITE ? 56 : 0;
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * A read-only view of a chess position. Squares are numbered as in
+ * `Bitboard`: square = row * 8 + column, where row 0 is rank 8.
+ */
+public interface BoardView {
+
+    /**
+     * Returns the piece index (see `Bitboard.PIECES`) on sq, or
+     * `Bitboard.EMPTY`.
+     */
+    int pieceOn(int sq);
+
+    /**
+     * Returns the FEN letter of the piece on a square, or ' ' if it is
+     * empty.
+     */
+    char charAt(int row, int col);
+
+    /**
+     * Returns `Bitboard.WHITE` or `Bitboard.BLACK`.
+     */
+    int sideToMove();
+
+    int castlingRights();
+
+    /**
+     * Returns the square a pawn just passed over with a two square
+     * advance, or -1.
+     */
+    int enPassantSquare();
+
+    int halfmoveClock();
+
+    int fullmoveNumber();
+
+    /**
+     * Returns a 64-bit Zobrist hash of the position, including side to
+     * move, castling rights and en passant file.
+     */
+    long hash();
+}
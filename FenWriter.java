@@ -0,0 +1,122 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Writes positions in Forsyth-Edwards Notation into a caller-supplied
+ * `StringBuilder` or `ByteBuffer`, so emitting a FEN after every ply does
+ * not have to allocate.
+ *
+ * @see http://www.saremba.de/chessgml/standards/pgn/pgn-complete.htm#c16.1
+ */
+public class FenWriter {
+
+    /** The longest possible full FEN, in characters. */
+    public static final int MAX_LENGTH = 92;
+
+    /**
+     * Appends only the piece placement field of board's FEN to sb.
+     */
+    public static StringBuilder appendPlacement(BoardView board,
+        StringBuilder sb) {
+        writePlacement(board, sb, null);
+        return sb;
+    }
+
+    /**
+     * Appends the full FEN of board to sb: piece placement, side to move,
+     * castling rights, en passant square, halfmove clock and fullmove
+     * number.
+     */
+    public static StringBuilder append(BoardView board, StringBuilder sb) {
+        writePlacement(board, sb, null);
+        writeState(board, sb, null);
+        return sb;
+    }
+
+    /**
+     * Writes the full FEN of board into buf as ASCII bytes.
+     */
+    public static ByteBuffer append(BoardView board, ByteBuffer buf) {
+        writePlacement(board, null, buf);
+        writeState(board, null, buf);
+        return buf;
+    }
+
+    public static String toFen(BoardView board) {
+        return append(board, new StringBuilder(MAX_LENGTH)).toString();
+    }
+
+    private static void writePlacement(BoardView board, StringBuilder sb,
+        ByteBuffer buf) {
+        for (int i = 0; i < 8; i++) {
+            int emptySquareCounter = 0;
+            for (int j = 0; j < 8; j++) {
+                char piece = board.charAt(i, j);
+                if (piece == ' ') {
+                    emptySquareCounter++;
+                    continue;
+                }
+                if (emptySquareCounter > 0) {
+                    put((char) ('0' + emptySquareCounter), sb, buf);
+                    emptySquareCounter = 0;
+                }
+                put(piece, sb, buf);
+            }
+            if (emptySquareCounter > 0) {
+                put((char) ('0' + emptySquareCounter), sb, buf);
+            }
+            if (i != 7) {
+                put('/', sb, buf);
+            }
+        }
+    }
+
+    private static void writeState(BoardView board, StringBuilder sb,
+        ByteBuffer buf) {
+        put(' ', sb, buf);
+        put(board.sideToMove() == Bitboard.WHITE ? 'w' : 'b', sb, buf);
+        put(' ', sb, buf);
+        int castling = board.castlingRights();
+        if (castling == 0) {
+            put('-', sb, buf);
+        }
+        if ((castling & Bitboard.WHITE_KING_SIDE) != 0) {
+            put('K', sb, buf);
+        }
+        if ((castling & Bitboard.WHITE_QUEEN_SIDE) != 0) {
+            put('Q', sb, buf);
+        }
+        if ((castling & Bitboard.BLACK_KING_SIDE) != 0) {
+            put('k', sb, buf);
+        }
+        if ((castling & Bitboard.BLACK_QUEEN_SIDE) != 0) {
+            put('q', sb, buf);
+        }
+        put(' ', sb, buf);
+        int ep = board.enPassantSquare();
+        if (ep < 0) {
+            put('-', sb, buf);
+        } else {
+            put((char) ('a' + (ep & 7)), sb, buf);
+            put((char) ('8' - (ep >> 3)), sb, buf);
+        }
+        put(' ', sb, buf);
+        putInt(board.halfmoveClock(), sb, buf);
+        put(' ', sb, buf);
+        putInt(board.fullmoveNumber(), sb, buf);
+    }
+
+    private static void putInt(int n, StringBuilder sb, ByteBuffer buf) {
+        if (n >= 10) {
+            putInt(n / 10, sb, buf);
+        }
+        put((char) ('0' + n % 10), sb, buf);
+    }
+
+    private static void put(char c, StringBuilder sb, ByteBuffer buf) {
+        if (sb != null) {
+            sb.append(c);
+        } else {
+            buf.put((byte) c);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+import java.util.Arrays;
+
+/**
+ * A game with its recursive annotation variations.
+ *
+ * The main line is lexed and replayed as soon as the tree is built. Each
+ * side variation is kept only as the range of text between its
+ * parentheses, together with the main line move it is an alternative to;
+ * it is lexed and replayed, as another `GameTree`, when `variation` is
+ * first called for it. Variations nested inside it stay unparsed until
+ * they are asked for in turn, so the cost of a heavily annotated game
+ * depends on how much of it is looked at.
+ *
+ * A line ends before its first move that is not legal in the position
+ * reached, along with any variations after it; see `illegalMove`.
+ */
+public class GameTree {
+
+    // copies of the board before every SNAPSHOT_PLIES-th main line move,
+    // so a variation's starting position replays at most that many moves
+    private static final int SNAPSHOT_PLIES = 16;
+
+    private final CharSequence text;
+    private final Bitboard end;
+    private Bitboard[] snapshots = new Bitboard[4];
+    private int illegalStart = -1;
+    private int illegalEnd = -1;
+
+    // main line moves: decoded move and SAN range
+    private int[] moves = new int[64];
+    private int[] sanStarts = new int[64];
+    private int[] sanEnds = new int[64];
+    private int size = 0;
+
+    // variations: the main line move each replaces and its text range
+    private int[] variationMoves = new int[4];
+    private int[] variationStarts = new int[4];
+    private int[] variationEnds = new int[4];
+    private GameTree[] variations = new GameTree[4];
+    private int variationCount = 0;
+
+    private GameTree(CharSequence text, int from, int to, Bitboard start) {
+        this.text = text;
+        this.end = new Bitboard(start);
+        parse(from, to);
+    }
+
+    /**
+     * Builds the tree of a game, replaying its main line from the
+     * starting position.
+     *
+     * @param game a `String` containing a PGN-formatted chess game
+     */
+    public static GameTree parse(CharSequence game) {
+        return new GameTree(game, 0, game.length(), new Bitboard());
+    }
+
+    private void parse(int from, int to) {
+        MovetextLexer lexer = new MovetextLexer(text, from, to);
+        int variationStart = -1;
+        for (int kind = lexer.next(); kind != MovetextLexer.END;
+            kind = lexer.next()) {
+            if (kind == MovetextLexer.MOVE && lexer.depth() == 0) {
+                int move = SanDecoder.decode(text, lexer.start(),
+                    lexer.end());
+                if (size % SNAPSHOT_PLIES == 0) {
+                    addSnapshot();
+                }
+                if (!end.tryApply(move, end.sideToMove())) {
+                    illegalStart = lexer.start();
+                    illegalEnd = lexer.end();
+                    return; // the rest of the line would be replayed wrongly
+                }
+                addMove(move, lexer.start(), lexer.end());
+            } else if (kind == MovetextLexer.VARIATION_START
+                && lexer.depth() == 1) {
+                variationStart = lexer.end();
+            } else if (kind == MovetextLexer.VARIATION_END
+                && lexer.depth() == 0 && size > 0) {
+                addVariation(size - 1, variationStart, lexer.start());
+            } else if (kind == MovetextLexer.RESULT && lexer.depth() == 0) {
+                break;
+            }
+        }
+        if (lexer.depth() > 0 && size > 0) {
+            addVariation(size - 1, variationStart, to); // unterminated
+        }
+    }
+
+    private void addMove(int move, int sanStart, int sanEnd) {
+        if (size == moves.length) {
+            moves = Arrays.copyOf(moves, size * 2);
+            sanStarts = Arrays.copyOf(sanStarts, size * 2);
+            sanEnds = Arrays.copyOf(sanEnds, size * 2);
+        }
+        moves[size] = move;
+        sanStarts[size] = sanStart;
+        sanEnds[size] = sanEnd;
+        size++;
+    }
+
+    private void addSnapshot() {
+        int n = size / SNAPSHOT_PLIES;
+        if (n == snapshots.length) {
+            snapshots = Arrays.copyOf(snapshots, n * 2);
+        }
+        snapshots[n] = new Bitboard(end);
+    }
+
+    private void addVariation(int move, int from, int to) {
+        if (variationCount == variationMoves.length) {
+            int n = variationCount * 2;
+            variationMoves = Arrays.copyOf(variationMoves, n);
+            variationStarts = Arrays.copyOf(variationStarts, n);
+            variationEnds = Arrays.copyOf(variationEnds, n);
+            variations = Arrays.copyOf(variations, n);
+        }
+        variationMoves[variationCount] = move;
+        variationStarts[variationCount] = from;
+        variationEnds[variationCount] = to;
+        variationCount++;
+    }
+
+    /**
+     * Returns the number of moves in this line.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns move i of this line (counting from 0) as decoded by
+     * `SanDecoder`.
+     */
+    public int move(int i) {
+        return moves[i];
+    }
+
+    /**
+     * Returns move i of this line as it is written in the movetext.
+     */
+    public String san(int i) {
+        return text.subSequence(sanStarts[i], sanEnds[i]).toString();
+    }
+
+    /**
+     * Returns the position at the end of this line. The board belongs to
+     * the tree; copy it before changing it.
+     */
+    public Bitboard finalBoard() {
+        return end;
+    }
+
+    /**
+     * Returns the first move of this line, as it is written in the
+     * movetext, that could not be played, or null if every move could.
+     */
+    public String illegalMove() {
+        return illegalStart < 0 ? null
+            : text.subSequence(illegalStart, illegalEnd).toString();
+    }
+
+    /**
+     * Returns a new board with the position before move i of this line.
+     */
+    public Bitboard positionBefore(int i) {
+        if (i < 0 || i > size) {
+            throw new IndexOutOfBoundsException("no move " + i);
+        }
+        if (i == size) {
+            return new Bitboard(end);
+        }
+        Bitboard board = new Bitboard(snapshots[i / SNAPSHOT_PLIES]);
+        for (int j = i - i % SNAPSHOT_PLIES; j < i; j++) {
+            board.apply(moves[j], board.sideToMove());
+        }
+        return board;
+    }
+
+    /**
+     * Returns the number of variations given as alternatives to move i.
+     */
+    public int variationCount(int i) {
+        int n = 0;
+        for (int v = 0; v < variationCount; v++) {
+            if (variationMoves[v] == i) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the number of variations in this line, not counting the
+     * ones nested inside them.
+     */
+    public int variationCount() {
+        return variationCount;
+    }
+
+    /**
+     * Returns alternative number k to move i of this line, parsing and
+     * replaying it on first access.
+     */
+    public GameTree variation(int i, int k) {
+        int seen = 0;
+        for (int v = 0; v < variationCount; v++) {
+            if (variationMoves[v] == i && seen++ == k) {
+                if (variations[v] == null) {
+                    variations[v] = new GameTree(text, variationStarts[v],
+                        variationEnds[v], positionBefore(i));
+                }
+                return variations[v];
+            }
+        }
+        throw new IndexOutOfBoundsException("no variation " + k
+            + " at move " + i);
+    }
+}
@@ -0,0 +1,245 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * An index of the tag pairs of every game in a PGN file. Each game is
+ * stored as its byte offset plus one small integer per indexed tag, and
+ * the distinct tag values are interned in per-tag tables. Filtering
+ * millions of games by player, event or date only tests each distinct
+ * value once and never reads the movetext.
+ *
+ * By default the Seven Tag Roster is indexed.
+ */
+public class HeaderIndex {
+
+    public static final String[] SEVEN_TAG_ROSTER = {"Event", "Site", "Date",
+        "Round", "White", "Black", "Result"};
+
+    private static final int MAGIC = 0x50474E48; // "PGNH"
+
+    private final String[] tagNames;
+    private final List<List<String>> valueTables = new ArrayList<>();
+    private final List<Map<String, Integer>> valueIds = new ArrayList<>();
+    private long[] offsets = new long[1024];
+    private int[][] ids;
+    private int size = 0;
+
+    private HeaderIndex(String[] tagNames) {
+        this.tagNames = tagNames.clone();
+        this.ids = new int[tagNames.length][offsets.length];
+        for (int i = 0; i < tagNames.length; i++) {
+            valueTables.add(new ArrayList<>());
+            valueIds.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Scans the tag sections of every game in pgnFile.
+     */
+    public static HeaderIndex build(Path pgnFile) throws IOException {
+        return build(pgnFile, SEVEN_TAG_ROSTER);
+    }
+
+    /**
+     * Scans the tag sections of every game in pgnFile, indexing the named
+     * tags.
+     */
+    public static HeaderIndex build(Path pgnFile, String[] tagNames)
+        throws IOException {
+        HeaderIndex index = new HeaderIndex(tagNames);
+        MappedPgnScanner scanner = new MappedPgnScanner(pgnFile);
+        scanner.scan(new MappedPgnScanner.Handler() {
+            @Override
+            public void gameStart(long offset) {
+                index.addGame(offset);
+            }
+
+            @Override
+            public void tag(long nameOffset, int nameLength,
+                long valueOffset, int valueLength) {
+                for (int t = 0; t < index.tagNames.length; t++) {
+                    if (scanner.sliceEquals(nameOffset, nameLength,
+                        index.tagNames[t])) {
+                        // the file keeps the backslash escapes
+                        String value = PgnHeader.unescape(scanner.string(
+                            valueOffset, valueLength));
+                        index.ids[t][index.size - 1] = index.intern(t, value);
+                    }
+                }
+            }
+        });
+        return index;
+    }
+
+    private void addGame(long offset) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+            for (int t = 0; t < ids.length; t++) {
+                ids[t] = Arrays.copyOf(ids[t], size * 2);
+            }
+        }
+        offsets[size] = offset;
+        for (int t = 0; t < ids.length; t++) {
+            ids[t][size] = -1;
+        }
+        size++;
+    }
+
+    private int intern(int tag, String value) {
+        Integer id = valueIds.get(tag).get(value);
+        if (id == null) {
+            id = valueTables.get(tag).size();
+            valueTables.get(tag).add(value);
+            valueIds.get(tag).put(value, id);
+        }
+        return id;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the byte offset of game i in the PGN file.
+     */
+    public long offset(int game) {
+        return offsets[game];
+    }
+
+    /**
+     * Returns the value of an indexed tag for game i, or null if that game
+     * does not have the tag.
+     */
+    public String value(int game, String tagName) {
+        int t = tagIndex(tagName);
+        int id = ids[t][game];
+        return id < 0 ? null : valueTables.get(t).get(id);
+    }
+
+    /**
+     * Returns the numbers of the games whose value for an indexed tag
+     * satisfies matcher. The matcher is called once per distinct value.
+     */
+    public int[] find(String tagName, Predicate<String> matcher) {
+        int t = tagIndex(tagName);
+        List<String> table = valueTables.get(t);
+        boolean[] matches = new boolean[table.size()];
+        for (int id = 0; id < matches.length; id++) {
+            matches[id] = matcher.test(table.get(id));
+        }
+        int[] column = ids[t];
+        int[] found = new int[16];
+        int n = 0;
+        for (int game = 0; game < size; game++) {
+            if (column[game] >= 0 && matches[column[game]]) {
+                if (n == found.length) {
+                    found = Arrays.copyOf(found, n * 2);
+                }
+                found[n++] = game;
+            }
+        }
+        return Arrays.copyOf(found, n);
+    }
+
+    /**
+     * Returns the numbers of the games in which player had white or black.
+     */
+    public int[] gamesOf(String player) {
+        int[] white = find("White", player::equals);
+        int[] black = find("Black", player::equals);
+        int[] games = new int[white.length + black.length];
+        int i = 0, j = 0, n = 0;
+        while (i < white.length || j < black.length) { // merge sorted lists
+            if (j == black.length
+                || (i < white.length && white[i] < black[j])) {
+                games[n++] = white[i++];
+            } else {
+                games[n++] = black[j++];
+            }
+        }
+        return games;
+    }
+
+    private int tagIndex(String tagName) {
+        for (int t = 0; t < tagNames.length; t++) {
+            if (tagNames[t].equals(tagName)) {
+                return t;
+            }
+        }
+        throw new IllegalArgumentException("tag not indexed: " + tagName);
+    }
+
+    /**
+     * Writes the index to a file so it can be reloaded with `load`
+     * without scanning the PGN file again.
+     */
+    public void save(Path indexFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(indexFile),
+                1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(tagNames.length);
+            for (int t = 0; t < tagNames.length; t++) {
+                out.writeUTF(tagNames[t]);
+                List<String> table = valueTables.get(t);
+                out.writeInt(table.size());
+                for (String value : table) {
+                    out.writeUTF(value);
+                }
+            }
+            out.writeInt(size);
+            for (int game = 0; game < size; game++) {
+                out.writeLong(offsets[game]);
+                for (int t = 0; t < tagNames.length; t++) {
+                    out.writeInt(ids[t][game]);
+                }
+            }
+        }
+    }
+
+    public static HeaderIndex load(Path indexFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(indexFile),
+                1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a header index: " + indexFile);
+            }
+            String[] tagNames = new String[in.readInt()];
+            List<List<String>> tables = new ArrayList<>();
+            for (int t = 0; t < tagNames.length; t++) {
+                tagNames[t] = in.readUTF();
+                List<String> table = new ArrayList<>();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    table.add(in.readUTF());
+                }
+                tables.add(table);
+            }
+            HeaderIndex index = new HeaderIndex(tagNames);
+            for (int t = 0; t < tagNames.length; t++) {
+                for (String value : tables.get(t)) {
+                    index.intern(t, value);
+                }
+            }
+            int games = in.readInt();
+            for (int game = 0; game < games; game++) {
+                index.addGame(in.readLong());
+                for (int t = 0; t < tagNames.length; t++) {
+                    index.ids[t][game] = in.readInt();
+                }
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,438 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reads, splits, parses and replays PGN files as a pipeline of stages
+ * joined by bounded queues:
+ *
+ * 1. a reader thread that reads the files, decompressing them if need
+ *    be (see `PgnInput`), in fixed-size byte chunks,
+ * 2. a splitter thread that cuts the byte stream into games and parses
+ *    their tag pairs,
+ * 3. a `BatchReplay.Engine` with `replayThreads` threads, which the
+ *    calling thread hands the split games to in batches and which
+ *    replays their movetext,
+ * 4. the calling thread again, which hands finished games to a `Sink`.
+ *
+ * Disk reads and decompression, splitting and replay overlap. A full
+ * queue blocks the stage feeding it, and no more than `window` games are
+ * in flight between the splitter and the sink at any time, so memory
+ * stays bounded however slow the sink is. Reading and splitting are
+ * sequential by nature, so their tuning knob is how far ahead of replay
+ * they may run.
+ */
+public class IngestPipeline {
+
+    /**
+     * Receives each game once it has been replayed. Called on the thread
+     * that called `run`, one game at a time.
+     */
+    public interface Sink {
+        void accept(Game game) throws IOException;
+    }
+
+    /**
+     * A game passing through the pipeline.
+     */
+    public static class Game {
+        /** The position of the game in the input, counting from 0. */
+        public final long index;
+        /** The file the game came from. */
+        public final Path source;
+        /** The position of the game in its file, counting from 0. */
+        public final long indexInSource;
+        public final String text;
+        public final PgnHeader header;
+        /** The final position, set by the replay stage. */
+        public String fen;
+        /** Why the game could not be replayed, if it could not. */
+        PgnError error;
+
+        Game(long index, Path source, long indexInSource, String text,
+            PgnHeader header) {
+            this.index = index;
+            this.source = source;
+            this.indexInSource = indexInSource;
+            this.text = text;
+            this.header = header;
+        }
+    }
+
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int BATCH_SIZE = 64;
+    private static final byte[] END_OF_FILE = new byte[0];
+    private static final byte[] READ_FAILED = new byte[0];
+    private static final Game NO_MORE_GAMES = new Game(-1, null, -1, null,
+        null);
+
+    private final int replayThreads;
+    private final int chunksAhead;
+    private final int window;
+    private final boolean ordered;
+    private final ReplayCache cache;
+
+    /**
+     * @param replayThreads the number of threads replaying games
+     * @param chunksAhead how many 64 KiB chunks the reader may read ahead
+     *     of the splitter
+     * @param window the most games held between splitting and the sink
+     * @param ordered whether the sink receives games in input order; if
+     *     not, it receives them as soon as they are replayed
+     */
+    public IngestPipeline(int replayThreads, int chunksAhead, int window,
+        boolean ordered) {
+        this(replayThreads, chunksAhead, window, ordered, null);
+    }
+
+    /**
+     * Creates a pipeline whose replay threads share cache, so that games
+     * with a common opening start from its position instead of the
+     * starting one.
+     *
+     * @param cache the opening positions to share, or null for none
+     */
+    public IngestPipeline(int replayThreads, int chunksAhead, int window,
+        boolean ordered, ReplayCache cache) {
+        this.replayThreads = replayThreads;
+        this.chunksAhead = chunksAhead;
+        this.window = Math.max(window, replayThreads);
+        this.ordered = ordered;
+        this.cache = cache;
+    }
+
+    /**
+     * Creates a pipeline with one replay thread per processor and a
+     * window of 64 games per replay thread, delivering games in order.
+     */
+    public IngestPipeline() {
+        this(Runtime.getRuntime().availableProcessors(), 16,
+            64 * Runtime.getRuntime().availableProcessors(), true);
+    }
+
+    /**
+     * Runs the files through the pipeline and returns when every game has
+     * been passed to sink, or as soon as any stage fails.
+     *
+     * @param files the PGN files to read, in order
+     * @param sink where replayed games are delivered
+     * @return the number of games delivered
+     */
+    public long run(List<Path> files, Sink sink) throws IOException {
+        return new Run(files, null).drainTo(sink);
+    }
+
+    /**
+     * Runs the files through the pipeline like `run(List, Sink)`, but a
+     * game with a move that cannot be played is passed to errors instead
+     * of sink, in input order and on the same thread. Such games do not
+     * slow the run down or stop it. Neither does a file that cannot be
+     * read: the games read from it so far are delivered, the failure is
+     * reported to errors as an error in the game where reading stopped,
+     * and the run goes on with the next file.
+     *
+     * @param files the PGN files to read, in order
+     * @param sink where replayed games are delivered
+     * @param errors where games that cannot be replayed are reported
+     * @return the number of games delivered to sink
+     */
+    public long run(List<Path> files, Sink sink, PgnError.Handler errors)
+        throws IOException {
+        return new Run(files, errors).drainTo(sink);
+    }
+
+    private class Run {
+        final BlockingQueue<byte[]> chunks =
+            new ArrayBlockingQueue<>(chunksAhead);
+        final BlockingQueue<Game> parsed = new ArrayBlockingQueue<>(window);
+        final Semaphore inFlight = new Semaphore(window);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread[] threads = new Thread[2];
+        final PgnError.Handler errors;
+        // why each file that could not be read failed, set by the reader
+        // before it queues READ_FAILED in place of END_OF_FILE
+        final IOException[] unreadable;
+        long delivered = 0;
+
+        Run(List<Path> files, PgnError.Handler errors) {
+            this.errors = errors;
+            this.unreadable = new IOException[files.size()];
+            threads[0] = new Thread(stage(() -> read(files)), "pgn-reader");
+            threads[1] = new Thread(stage(() -> split(files)),
+                "pgn-splitter");
+            for (Thread thread : threads) {
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        Runnable stage(Task task) {
+            return () -> {
+                try {
+                    task.run();
+                } catch (CancellationException e) {
+                    // another stage failed and has recorded why
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            };
+        }
+
+        void read(List<Path> files) throws IOException {
+            for (int i = 0; i < files.size(); i++) {
+                try (InputStream in = PgnInput.open(files.get(i))) {
+                    byte[] chunk = new byte[CHUNK_SIZE];
+                    int n;
+                    while ((n = in.read(chunk)) > 0) {
+                        put(chunks, n == chunk.length ? chunk
+                            : Arrays.copyOf(chunk, n));
+                        chunk = new byte[CHUNK_SIZE];
+                    }
+                } catch (IOException e) {
+                    if (errors == null) {
+                        throw e;
+                    }
+                    unreadable[i] = e;
+                    put(chunks, READ_FAILED);
+                    continue;
+                }
+                put(chunks, END_OF_FILE);
+            }
+        }
+
+        void split(List<Path> files) {
+            long index = 0;
+            for (int i = 0; i < files.size(); i++) {
+                Path file = files.get(i);
+                // a new reader per file, so that a game left unfinished at
+                // the end of one file, such as by an unclosed comment,
+                // ends there instead of swallowing the next file's first
+                PgnGameReader games =
+                    new PgnGameReader(new ChunkStream(this, i));
+                long indexInFile = 0;
+                try {
+                    while (games.hasNext()) {
+                        String text = games.next();
+                        acquire();
+                        put(parsed, new Game(index++, file, indexInFile++,
+                            text, PgnHeader.parse(text)));
+                    }
+                } catch (UncheckedIOException e) {
+                    if (unreadable[i] == null) {
+                        throw e;
+                    }
+                    Game game = new Game(index++, file, indexInFile, null,
+                        null);
+                    game.error = new PgnError(file.toString(), indexInFile,
+                        0, null, unreadable[i].toString());
+                    acquire();
+                    put(parsed, game);
+                }
+            }
+            put(parsed, NO_MORE_GAMES);
+        }
+
+        void replay(List<Game> batch) {
+            Bitboard board = new Bitboard();
+            for (Game game : batch) {
+                if (game.error != null) {
+                    continue; // its file could not be read
+                } else if (errors == null) {
+                    game.fen = cache == null
+                        ? PgnReader.finalPosition(game.text, board)
+                        : PgnReader.finalPosition(game.text, board, cache);
+                } else {
+                    Game current = game;
+                    String source = game.source.toString();
+                    PgnError.Handler handler =
+                        error -> current.error = error.in(source);
+                    game.fen = PgnReader.finalPosition(game.text, board,
+                        game.indexInSource, handler, cache);
+                }
+            }
+        }
+
+        long drainTo(Sink sink) throws IOException {
+            BatchReplay.Engine.Sink<Game> deliver = game -> deliver(game, sink);
+            try (BatchReplay.Engine<Game> engine = new BatchReplay.Engine<>(
+                replayThreads, ordered, this::replay)) {
+                boolean more = true;
+                while (more) {
+                    // batch whatever has been split by now, so no game
+                    // waits here for more to come
+                    List<Game> batch = new ArrayList<>();
+                    batch.add(next(engine, deliver));
+                    parsed.drainTo(batch, BATCH_SIZE - 1);
+                    if (batch.get(batch.size() - 1) == NO_MORE_GAMES) {
+                        batch.remove(batch.size() - 1);
+                        more = false;
+                    }
+                    if (!batch.isEmpty()) {
+                        engine.submit(batch, deliver);
+                    }
+                }
+                engine.finish(deliver);
+            } catch (CancellationException e) {
+                rethrow();
+            } catch (IOException | RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                for (Thread thread : threads) {
+                    thread.interrupt();
+                }
+            }
+            rethrow();
+            return delivered;
+        }
+
+        // waits for the next split game, delivering replayed ones meanwhile
+        Game next(BatchReplay.Engine<Game> engine,
+            BatchReplay.Engine.Sink<Game> deliver) throws IOException {
+            try {
+                Game game;
+                while ((game = parsed.poll()) == null) {
+                    checkFailure();
+                    if (inFlight.availablePermits() == 0) {
+                        // the splitter waits for the sink to take a game
+                        engine.await(deliver);
+                    } else if ((game = parsed.poll(5,
+                        TimeUnit.MILLISECONDS)) != null) {
+                        return game;
+                    } else {
+                        engine.poll(deliver);
+                    }
+                }
+                return game;
+            } catch (InterruptedException e) {
+                throw new CancellationException();
+            }
+        }
+
+        void deliver(Game game, Sink sink) throws IOException {
+            if (game.error != null) {
+                errors.error(game.error);
+            } else {
+                sink.accept(game);
+                delivered++;
+            }
+            inFlight.release();
+        }
+
+        void rethrow() throws IOException {
+            Throwable t = failure.get();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            } else if (t instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) t).getCause();
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            } else if (t != null) {
+                throw new IllegalStateException(t);
+            }
+        }
+
+        // the blocking operations give up once any stage has failed
+        <T> void put(BlockingQueue<T> queue, T item) {
+            try {
+                while (!queue.offer(item, 50, TimeUnit.MILLISECONDS)) {
+                    checkFailure();
+                }
+            } catch (InterruptedException e) {
+                throw new CancellationException();
+            }
+        }
+
+        <T> T take(BlockingQueue<T> queue) {
+            try {
+                T item;
+                while ((item = queue.poll(50, TimeUnit.MILLISECONDS)) == null) {
+                    checkFailure();
+                }
+                return item;
+            } catch (InterruptedException e) {
+                throw new CancellationException();
+            }
+        }
+
+        void acquire() {
+            try {
+                while (!inFlight.tryAcquire(50, TimeUnit.MILLISECONDS)) {
+                    checkFailure();
+                }
+            } catch (InterruptedException e) {
+                throw new CancellationException();
+            }
+        }
+
+        void checkFailure() {
+            if (failure.get() != null) {
+                throw new CancellationException();
+            }
+        }
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * Presents the chunks of one file coming from the reader stage as a
+     * stream, which ends where the file does.
+     */
+    private static class ChunkStream extends InputStream {
+        private final Run run;
+        private final int file;
+        private byte[] chunk = new byte[0];
+        private int pos = 0;
+
+        ChunkStream(Run run, int file) {
+            this.run = run;
+            this.file = file;
+        }
+
+        private boolean fill() throws IOException {
+            while (pos == chunk.length) {
+                if (chunk == END_OF_FILE) {
+                    return false;
+                } else if (chunk == READ_FAILED) {
+                    throw run.unreadable[file];
+                }
+                chunk = run.take(run.chunks);
+                pos = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? chunk[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, chunk.length - pos);
+            System.arraycopy(chunk, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-maps a PGN file and tokenizes it directly over the mapped bytes.
+ *
+ * Tags, SAN tokens and game boundaries are reported to a `Handler` as
+ * offset/length slices into the file, so a scan allocates nothing per
+ * token and reads through the page cache instead of copying the file onto
+ * the heap. Comments, NAGs, variations and move numbers are skipped.
+ * A single game may not be 2 GiB or longer.
+ *
+ * @see http://www.saremba.de/chessgml/standards/pgn/pgn-complete.htm#c8
+ */
+public class MappedPgnScanner {
+
+    /**
+     * Receives the slices found by a scan. Offsets are absolute positions
+     * in the file; every method does nothing by default.
+     */
+    public interface Handler {
+        default void gameStart(long offset) {
+        }
+
+        default void tag(long nameOffset, int nameLength, long valueOffset,
+            int valueLength) {
+        }
+
+        default void move(long offset, int length) {
+        }
+
+        default void result(long offset, int length) {
+        }
+
+        /**
+         * Called once per game with the byte range [start, end) it covers.
+         */
+        default void gameEnd(long start, long end) {
+        }
+    }
+
+    // each mapping covers at most 1 GiB so files over 2 GiB can be mapped
+    private static final int SEGMENT_BITS = 30;
+
+    private final MappedByteBuffer[] segments;
+    private final int segmentBits;
+    private final long segmentMask;
+    private final long size;
+
+    public MappedPgnScanner(Path path) throws IOException {
+        this(path, SEGMENT_BITS);
+    }
+
+    /**
+     * Maps path in segments of 2^segmentBits bytes, so tests can cross
+     * segment boundaries without gigabyte files.
+     */
+    MappedPgnScanner(Path path, int segmentBits) throws IOException {
+        this.segmentBits = segmentBits;
+        this.segmentMask = (1L << segmentBits) - 1;
+        try (FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.READ)) {
+            size = channel.size();
+            int count = (int) ((size + segmentMask) >>> segmentBits);
+            segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << segmentBits;
+                long length = Math.min(size - start, segmentMask + 1);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    length);
+            }
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public byte byteAt(long offset) {
+        return segments[(int) (offset >>> segmentBits)]
+            .get((int) (offset & segmentMask));
+    }
+
+    /**
+     * Copies the slice at offset into dst and returns the number of bytes
+     * copied, which is at most the remaining space in dst.
+     */
+    public int copy(long offset, int length, byte[] dst, int dstOffset) {
+        int n = Math.min(length, dst.length - dstOffset);
+        for (int i = 0; i < n; i++) {
+            dst[dstOffset + i] = byteAt(offset + i);
+        }
+        return n;
+    }
+
+    /**
+     * Returns whether the slice at offset holds exactly the ASCII text s.
+     */
+    public boolean sliceEquals(long offset, int length, String s) {
+        if (length != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (byteAt(offset + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a slice as UTF-8. This allocates, so it is meant for the
+     * occasional tag value rather than for every token.
+     */
+    public String string(long offset, int length) {
+        byte[] bytes = new byte[length];
+        copy(offset, length, bytes, 0);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Tokenizes the whole file, reporting what it finds to handler. The
+     * tokens are found by a `MovetextLexer` running over the mapped bytes,
+     * so the scanner and the `String` based readers split movetext the
+     * same way. Moves inside variations are skipped.
+     */
+    public void scan(Handler handler) {
+        Window window = new Window();
+        MovetextLexer lexer = new MovetextLexer(window, 0, window.length());
+        long gameStart = -1;
+        boolean inMoves = false;
+        for (int kind = lexer.next(); kind != MovetextLexer.END;
+            kind = lexer.next()) {
+            if (kind == MovetextLexer.TAG) {
+                if (inMoves) { // movetext without a result ends at new tags
+                    handler.gameEnd(gameStart, window.base + lexer.start());
+                    gameStart = -1;
+                    inMoves = false;
+                }
+            } else if (kind == MovetextLexer.MOVE_NUMBER
+                || (kind == MovetextLexer.MOVE && lexer.depth() == 0)
+                || (kind == MovetextLexer.RESULT && lexer.depth() == 0)) {
+                inMoves = true;
+            } else {
+                continue; // comments, NAGs and variations
+            }
+            long start = window.base + lexer.start();
+            int length = lexer.end() - lexer.start();
+            if (gameStart < 0) {
+                // offsets within the window are ints, so move it to the
+                // start of each game; no game may be 2 GiB or longer
+                window.base = start;
+                lexer.reset(length, window.length());
+                gameStart = start;
+                handler.gameStart(gameStart);
+            }
+            if (kind == MovetextLexer.TAG) {
+                scanTag(start, start + length, handler);
+            } else if (kind == MovetextLexer.MOVE) {
+                handler.move(start, length);
+            } else if (kind == MovetextLexer.RESULT) {
+                handler.result(start, length);
+                handler.gameEnd(gameStart, start + length);
+                gameStart = -1;
+                inMoves = false;
+            }
+        }
+        if (gameStart >= 0) {
+            handler.gameEnd(gameStart, size);
+        }
+    }
+
+    // reports the tag pair in [pos, end), which starts with its '['
+    private void scanTag(long pos, long end, Handler handler) {
+        long p = pos + 1;
+        while (p < end && isSpace(byteAt(p))) {
+            p++;
+        }
+        long nameStart = p;
+        while (p < end && !isSpace(byteAt(p)) && byteAt(p) != '"'
+            && byteAt(p) != ']') {
+            p++;
+        }
+        long nameEnd = p;
+        while (p < end && byteAt(p) != '"' && byteAt(p) != ']') {
+            p++;
+        }
+        if (p >= end || byteAt(p) == ']') {
+            return; // malformed tag without a value
+        }
+        long valueStart = ++p;
+        while (p < end && byteAt(p) != '"') {
+            if (byteAt(p) == '\\') {
+                p++; // escaped quote or backslash
+            }
+            p++;
+        }
+        handler.tag(nameStart, (int) (nameEnd - nameStart), valueStart,
+            (int) (Math.min(p, end) - valueStart));
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    /**
+     * The mapped bytes from base on, as ISO-8859-1 characters, which is
+     * all the lexer needs to find ASCII delimiters in UTF-8 text.
+     */
+    private class Window implements CharSequence {
+        long base = 0;
+
+        @Override
+        public int length() {
+            return (int) Math.min(size - base, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (byteAt(base + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return string(base + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return string(base, length());
+        }
+    }
+}
@@ -0,0 +1,405 @@
+/**
+ * Generates legal moves for a `Bitboard` position.
+ *
+ * Check and pin detection use attack maps: the pieces giving check and the
+ * pieces pinned to their king are found once per position, so only king
+ * moves and en passant need a per-move attack test.
+ *
+ * Generated moves are packed as from | to << 6 | promotion << 12, where
+ * promotion is a piece type or 0. Castling is encoded as the king moving
+ * two squares, which is how `Bitboard` plays it.
+ */
+public class MoveGenerator {
+
+    /** More than the most legal moves possible in any position (218). */
+    public static final int MAX_MOVES = 256;
+
+    private static final long NOT_EMPTY = -1L;
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    public static int promotion(int move) {
+        return (move >>> 12) & 7;
+    }
+
+    public static int encode(int from, int to, int promotion) {
+        return from | (to << 6) | (promotion << 12);
+    }
+
+    /**
+     * Returns move, a move decoded by `SanDecoder`, packed like a
+     * generated move of the side to move, or -1 if no piece of that side
+     * can make it. Legality is not checked. However a move is written,
+     * such as "Nbd2" or "Nd2", "exd5" or "ed5", it packs the same way.
+     */
+    public static int resolve(Bitboard b, int move) {
+        if (move == SanDecoder.INVALID) {
+            return -1;
+        }
+        int from = b.origin(move, b.sideToMove);
+        if (from < 0) {
+            return -1;
+        } else if (SanDecoder.isCastle(move)) {
+            return encode(from, SanDecoder.isKingSideCastle(move) ? from + 2
+                : from - 2, 0);
+        }
+        return encode(from, SanDecoder.to(move), SanDecoder.promotion(move));
+    }
+
+    /**
+     * Appends move, a legal move of the side to move, to sb in SAN. The
+     * origin is given only as far as it is needed to tell the move from
+     * the others, and check is not marked.
+     */
+    public static StringBuilder appendSan(Bitboard b, int move,
+        StringBuilder sb) {
+        int from = from(move);
+        int to = to(move);
+        int piece = b.mailbox[from];
+        int type = piece % 6;
+        if (type == Bitboard.KING && (to - from == 2 || from - to == 2)) {
+            return sb.append(to > from ? "O-O" : "O-O-O");
+        }
+        boolean capture = b.mailbox[to] != Bitboard.EMPTY
+            || (type == Bitboard.PAWN && ((from ^ to) & 7) != 0);
+        if (type == Bitboard.PAWN) {
+            if (capture) {
+                sb.append((char) ('a' + (from & 7)));
+            }
+        } else {
+            sb.append(Bitboard.PIECES.charAt(type));
+            // the other pieces of the same kind that can move to `to`
+            long others = b.attacksFrom(type, to) & b.pieces[piece]
+                & ~(1L << from);
+            boolean ambiguous = false;
+            boolean sameCol = false;
+            boolean sameRow = false;
+            for (; others != 0; others &= others - 1) {
+                int other = Long.numberOfTrailingZeros(others);
+                if (isLegal(b, other, to)) {
+                    ambiguous = true;
+                    sameCol |= ((other ^ from) & 7) == 0;
+                    sameRow |= (other >> 3) == (from >> 3);
+                }
+            }
+            if (ambiguous && (!sameCol || sameRow)) {
+                sb.append((char) ('a' + (from & 7)));
+            }
+            if (sameCol) {
+                sb.append((char) ('8' - (from >> 3)));
+            }
+        }
+        if (capture) {
+            sb.append('x');
+        }
+        sb.append((char) ('a' + (to & 7))).append((char) ('8' - (to >> 3)));
+        if (promotion(move) != 0) {
+            sb.append('=').append(Bitboard.PIECES.charAt(promotion(move)));
+        }
+        return sb;
+    }
+
+    /**
+     * Returns the pieces of color that attack sq, given the occupied
+     * squares (which may differ from the board's own occupancy).
+     */
+    public static long attackers(Bitboard b, int sq, int color,
+        long occupied) {
+        int base = 6 * color;
+        long[] p = b.pieces;
+        long diagonal = p[base + Bitboard.BISHOP] | p[base + Bitboard.QUEEN];
+        long straight = p[base + Bitboard.ROOK] | p[base + Bitboard.QUEEN];
+        return (Bitboard.PAWN_ATTACKS[1 - color][sq] & p[base])
+            | (Bitboard.KNIGHT_ATTACKS[sq] & p[base + Bitboard.KNIGHT])
+            | (Bitboard.KING_ATTACKS[sq] & p[base + Bitboard.KING])
+            | (Bitboard.bishopAttacks(sq, occupied) & diagonal)
+            | (Bitboard.rookAttacks(sq, occupied) & straight);
+    }
+
+    public static boolean inCheck(Bitboard b) {
+        int us = b.sideToMove;
+        long kings = b.pieces[Bitboard.KING + 6 * us];
+        int king = Long.numberOfTrailingZeros(kings);
+        return king < 64 && attackers(b, king, 1 - us, b.occupied) != 0;
+    }
+
+    /**
+     * Returns whether moving the piece on from to to would leave the
+     * mover's own king safe. The move itself is assumed to be
+     * pseudo-legal.
+     */
+    public static boolean isLegal(Bitboard b, int from, int to) {
+        int piece = b.mailbox[from];
+        if (piece == Bitboard.EMPTY) {
+            return false;
+        }
+        int us = piece / 6;
+        long kings = b.pieces[Bitboard.KING + 6 * us];
+        if (kings == 0) {
+            return true; // no king to protect
+        }
+        long fromBit = 1L << from;
+        long toBit = 1L << to;
+        long occupied = (b.occupied & ~fromBit) | toBit;
+        long captured = toBit;
+        if (piece % 6 == Bitboard.PAWN && b.mailbox[to] == Bitboard.EMPTY
+            && ((from ^ to) & 7) != 0) {
+            long epPawn = 1L << ((from & ~7) | (to & 7));
+            occupied &= ~epPawn;
+            captured |= epPawn;
+        }
+        int king = piece % 6 == Bitboard.KING ? to
+            : Long.numberOfTrailingZeros(kings);
+        return !attacked(b, king, 1 - us, occupied, captured);
+    }
+
+    /**
+     * Returns whether sq is attacked by a piece of color other than those
+     * on captured, given the occupied squares. It looks from each enemy
+     * slider towards sq instead of scanning rays out of sq, which is
+     * quicker with the few sliders a position has.
+     */
+    private static boolean attacked(Bitboard b, int sq, int color,
+        long occupied, long captured) {
+        int base = 6 * color;
+        long[] p = b.pieces;
+        long leapers = (Bitboard.PAWN_ATTACKS[1 - color][sq] & p[base])
+            | (Bitboard.KNIGHT_ATTACKS[sq] & p[base + Bitboard.KNIGHT])
+            | (Bitboard.KING_ATTACKS[sq] & p[base + Bitboard.KING]);
+        if ((leapers & ~captured) != 0) {
+            return true;
+        }
+        long sliders = (p[base + Bitboard.BISHOP] | p[base + Bitboard.ROOK]
+            | p[base + Bitboard.QUEEN]) & ~captured;
+        while (sliders != 0) {
+            int from = Long.numberOfTrailingZeros(sliders);
+            sliders &= sliders - 1;
+            if (Bitboard.LINE[sq][from] == 0
+                || (Bitboard.BETWEEN[sq][from] & occupied) != 0) {
+                continue;
+            }
+            int type = b.mailbox[from] % 6;
+            boolean straight = (sq & 7) == (from & 7)
+                || (sq >> 3) == (from >> 3);
+            if (type == Bitboard.QUEEN
+                || (type == Bitboard.ROOK) == straight) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether moving the piece on from to to, promoting to the
+     * piece type promotion (0 for none), is a legal move for the side to
+     * move. Castling is a king move of two squares. Unlike `isLegal`, the
+     * move need not be pseudo-legal: anything `generate` would not produce
+     * is rejected, such as a capture of an own piece, a pawn push onto an
+     * occupied square or castling without the right to.
+     */
+    public static boolean isLegalMove(Bitboard b, int from, int to,
+        int promotion) {
+        int piece = b.mailbox[from];
+        int us = b.sideToMove;
+        long toBit = 1L << to;
+        if (piece == Bitboard.EMPTY || piece / 6 != us
+            || (b.colors[us] & toBit) != 0) {
+            return false;
+        }
+        int type = piece % 6;
+        if (type == Bitboard.PAWN) {
+            int forward = us == Bitboard.WHITE ? -8 : 8;
+            int startRow = us == Bitboard.WHITE ? 6 : 1;
+            int lastRow = us == Bitboard.WHITE ? 0 : 7;
+            if (((to >> 3) == lastRow) != (promotion >= Bitboard.KNIGHT
+                && promotion <= Bitboard.QUEEN)) {
+                return false;
+            }
+            if (((from ^ to) & 7) == 0) {
+                int one = from + forward;
+                boolean push = to == one
+                    || (to == one + forward && (from >> 3) == startRow
+                        && (b.occupied & (1L << one)) == 0);
+                if (!push || (b.occupied & toBit) != 0) {
+                    return false;
+                }
+            } else if ((Bitboard.PAWN_ATTACKS[us][from] & toBit) == 0
+                || ((b.colors[1 - us] & toBit) == 0 && to != b.epSquare)) {
+                return false;
+            }
+        } else if (promotion != 0) {
+            return false;
+        } else if (type == Bitboard.KING && (to - from == 2
+            || from - to == 2)) {
+            if (attackers(b, from, 1 - us, b.occupied) != 0) {
+                return false; // no castling out of check
+            }
+            int[] castles = new int[2];
+            int n = castling(b, us, from, castles, 0);
+            return (n > 0 && castles[0] == encode(from, to, 0))
+                || (n > 1 && castles[1] == encode(from, to, 0));
+        } else if ((b.attacksFrom(type, from) & toBit) == 0) {
+            return false;
+        }
+        return isLegal(b, from, to);
+    }
+
+    /**
+     * Writes the legal moves of the side to move into moves and returns
+     * how many there are.
+     *
+     * @param b the position
+     * @param moves an array of at least `MAX_MOVES` entries
+     * @return the number of moves written
+     */
+    public static int generate(Bitboard b, int[] moves) {
+        int us = b.sideToMove;
+        int them = 1 - us;
+        int base = 6 * us;
+        long own = b.colors[us];
+        long enemy = b.colors[them];
+        long occupied = b.occupied;
+        long kingBit = b.pieces[base + Bitboard.KING];
+        int n = 0;
+        if (kingBit == 0) {
+            return 0;
+        }
+        int king = Long.numberOfTrailingZeros(kingBit);
+
+        long checkers = attackers(b, king, them, occupied);
+        long kingTargets = Bitboard.KING_ATTACKS[king] & ~own;
+        while (kingTargets != 0) {
+            int to = Long.numberOfTrailingZeros(kingTargets);
+            kingTargets &= kingTargets - 1;
+            if (attackers(b, to, them, occupied ^ kingBit) == 0) {
+                moves[n++] = encode(king, to, 0);
+            }
+        }
+        if (Long.bitCount(checkers) > 1) {
+            return n; // only the king can answer a double check
+        }
+
+        long targets = ~own;
+        if (checkers != 0) {
+            int checker = Long.numberOfTrailingZeros(checkers);
+            targets &= checkers | Bitboard.BETWEEN[king][checker];
+        } else {
+            n = castling(b, us, king, moves, n);
+        }
+        long pinned = pinned(b, king, us);
+
+        for (int type = Bitboard.KNIGHT; type <= Bitboard.QUEEN; type++) {
+            long pieces = b.pieces[base + type];
+            while (pieces != 0) {
+                int from = Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1;
+                long attacks = b.attacksFrom(type, from) & targets;
+                if ((pinned & (1L << from)) != 0) {
+                    attacks &= Bitboard.LINE[king][from];
+                }
+                while (attacks != 0) {
+                    int to = Long.numberOfTrailingZeros(attacks);
+                    attacks &= attacks - 1;
+                    moves[n++] = encode(from, to, 0);
+                }
+            }
+        }
+
+        long pawns = b.pieces[base + Bitboard.PAWN];
+        int forward = us == Bitboard.WHITE ? -8 : 8;
+        int startRow = us == Bitboard.WHITE ? 6 : 1;
+        int lastRow = us == Bitboard.WHITE ? 0 : 7;
+        while (pawns != 0) {
+            int from = Long.numberOfTrailingZeros(pawns);
+            pawns &= pawns - 1;
+            long allowed = (pinned & (1L << from)) != 0
+                ? Bitboard.LINE[king][from] : NOT_EMPTY;
+            long dest = 0L;
+            int one = from + forward;
+            if ((occupied & (1L << one)) == 0) {
+                dest |= 1L << one;
+                int two = one + forward;
+                if ((from >> 3) == startRow && (occupied & (1L << two)) == 0) {
+                    dest |= 1L << two;
+                }
+            }
+            dest |= Bitboard.PAWN_ATTACKS[us][from] & enemy;
+            dest &= targets & allowed;
+            while (dest != 0) {
+                int to = Long.numberOfTrailingZeros(dest);
+                dest &= dest - 1;
+                if ((to >> 3) == lastRow) {
+                    for (int promo = Bitboard.QUEEN; promo >= Bitboard.KNIGHT;
+                        promo--) {
+                        moves[n++] = encode(from, to, promo);
+                    }
+                } else {
+                    moves[n++] = encode(from, to, 0);
+                }
+            }
+            int ep = b.epSquare;
+            if (ep >= 0 && (Bitboard.PAWN_ATTACKS[us][from] & (1L << ep)) != 0
+                && isLegal(b, from, ep)) {
+                moves[n++] = encode(from, ep, 0);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the pieces of color us that are pinned to the king on king.
+     */
+    static long pinned(Bitboard b, int king, int us) {
+        int them = 1 - us;
+        long[] p = b.pieces;
+        long diagonal = p[6 * them + Bitboard.BISHOP]
+            | p[6 * them + Bitboard.QUEEN];
+        long straight = p[6 * them + Bitboard.ROOK]
+            | p[6 * them + Bitboard.QUEEN];
+        // enemy sliders that would attack the king on an empty board
+        long snipers = (Bitboard.bishopAttacks(king, 0L) & diagonal)
+            | (Bitboard.rookAttacks(king, 0L) & straight);
+        long pinned = 0L;
+        while (snipers != 0) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+            long blockers = Bitboard.BETWEEN[king][sniper] & b.occupied;
+            if (Long.bitCount(blockers) == 1) {
+                pinned |= blockers & b.colors[us];
+            }
+        }
+        return pinned;
+    }
+
+    private static int castling(Bitboard b, int us, int king, int[] moves,
+        int n) {
+        int row = us == Bitboard.WHITE ? 56 : 0;
+        if (king != row + 4) {
+            return n;
+        }
+        int kingSide = us == Bitboard.WHITE ? Bitboard.WHITE_KING_SIDE
+            : Bitboard.BLACK_KING_SIDE;
+        int queenSide = us == Bitboard.WHITE ? Bitboard.WHITE_QUEEN_SIDE
+            : Bitboard.BLACK_QUEEN_SIDE;
+        int them = 1 - us;
+        if ((b.castling & kingSide) != 0
+            && (b.occupied & Bitboard.BETWEEN[king][row + 7]) == 0
+            && attackers(b, row + 5, them, b.occupied) == 0
+            && attackers(b, row + 6, them, b.occupied) == 0) {
+            moves[n++] = encode(king, row + 6, 0);
+        }
+        if ((b.castling & queenSide) != 0
+            && (b.occupied & Bitboard.BETWEEN[king][row]) == 0
+            && attackers(b, row + 3, them, b.occupied) == 0
+            && attackers(b, row + 2, them, b.occupied) == 0) {
+            moves[n++] = encode(king, row + 2, 0);
+        }
+        return n;
+    }
+}
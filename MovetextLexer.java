@@ -0,0 +1,250 @@
+/**
+ * Splits PGN movetext into tokens in a single pass, without regular
+ * expressions and without building a token array. Each call to `next`
+ * finds one token and reports its kind; `start` and `end` give its
+ * position in the text.
+ *
+ * Tag pairs, brace and semicolon comments, NAGs ($n, and ! or ? written
+ * apart from the move, as is an "e.p." after an en passant capture),
+ * `%` escape lines, recursive variations, move
+ * numbers in any of the forms 12. 12... and 12.Nf3, and game termination
+ * markers are all recognized, so `nextMove` can walk the main line of a
+ * heavily annotated game as quickly as a bare one.
+ *
+ * @see http://www.saremba.de/chessgml/standards/pgn/pgn-complete.htm#c8.2
+ */
+public class MovetextLexer {
+
+    public static final int END = 0;
+    public static final int MOVE = 1;
+    public static final int MOVE_NUMBER = 2;
+    public static final int RESULT = 3;
+    public static final int COMMENT = 4;
+    public static final int NAG = 5;
+    public static final int VARIATION_START = 6;
+    public static final int VARIATION_END = 7;
+    public static final int TAG = 8;
+
+    private final CharSequence text;
+    private int limit;
+    private int pos;
+    private int start;
+    private int end;
+    private int depth = 0;
+
+    public MovetextLexer(CharSequence text) {
+        this(text, 0, text.length());
+    }
+
+    /**
+     * Lexes the characters of text from start up to end.
+     */
+    public MovetextLexer(CharSequence text, int start, int end) {
+        this.text = text;
+        this.pos = start;
+        this.limit = end;
+        this.start = start;
+        this.end = start;
+    }
+
+    /**
+     * Starts lexing the text over again from start up to end, outside any
+     * variation, so one lexer can be reused without allocating.
+     */
+    void reset(int start, int end) {
+        this.pos = start;
+        this.limit = end;
+        this.start = start;
+        this.end = start;
+        this.depth = 0;
+    }
+
+    /**
+     * Finds the next token and returns its kind, or `END` when the text is
+     * used up. For a `COMMENT` the range excludes the braces or semicolon,
+     * and for a `TAG` it covers the whole bracketed pair.
+     */
+    public int next() {
+        while (pos < limit) {
+            char c = text.charAt(pos);
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                pos++;
+            } else if (c == '%' && (pos == 0 || text.charAt(pos - 1) == '\n')) {
+                pos = lineEnd(pos); // escape mechanism
+            } else if (c == '{') {
+                start = pos + 1;
+                end = indexOf('}', start);
+                pos = Math.min(end + 1, limit);
+                return COMMENT;
+            } else if (c == ';') {
+                start = pos + 1;
+                end = lineEnd(start);
+                pos = end;
+                return COMMENT;
+            } else if (c == '[') {
+                depth = 0; // a tag starts a new game
+                start = pos;
+                pos = tagEnd(pos + 1);
+                end = pos;
+                return TAG;
+            } else if (c == '(') {
+                depth++;
+                return single(VARIATION_START);
+            } else if (c == ')' && depth > 0) {
+                depth--;
+                return single(VARIATION_END);
+            } else if (c == '$') {
+                start = pos;
+                pos = digitsEnd(pos + 1);
+                end = pos;
+                return NAG;
+            } else if (c == '!' || c == '?') {
+                start = pos;
+                pos = tokenEnd(pos);
+                end = pos;
+                return NAG;
+            } else if (c == ')' || c == ']' || c == '}' || c == '.') {
+                pos++; // stray or unbalanced delimiter
+            } else {
+                return symbol(c);
+            }
+        }
+        start = limit;
+        end = limit;
+        return END;
+    }
+
+    private int single(int kind) {
+        start = pos;
+        end = ++pos;
+        return kind;
+    }
+
+    private int symbol(char c) {
+        start = pos;
+        int tokenEnd = tokenEnd(pos);
+        if (isResult(start, tokenEnd)) {
+            pos = end = tokenEnd;
+            return RESULT;
+        }
+        if (matches(start, tokenEnd, "e.p.")) {
+            pos = end = tokenEnd;
+            return NAG;
+        }
+        if (c >= '0' && c <= '9') {
+            // a move number; "12.Nf3" leaves Nf3 for the next call
+            int digits = digitsEnd(pos);
+            int p = digits;
+            while (p < tokenEnd && text.charAt(p) == '.') {
+                p++;
+            }
+            if (p > digits || p == tokenEnd) {
+                pos = end = p;
+                return MOVE_NUMBER;
+            }
+        }
+        pos = end = tokenEnd;
+        return MOVE;
+    }
+
+    /**
+     * Advances to the next move of the main line, skipping comments,
+     * NAGs, move numbers and variations. Returns false at the game
+     * termination marker or the end of the text.
+     */
+    public boolean nextMove() {
+        while (true) {
+            int kind = next();
+            if (kind == END || (kind == RESULT && depth == 0)) {
+                return false;
+            }
+            if (kind == MOVE && depth == 0) {
+                return true;
+            }
+        }
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int end() {
+        return end;
+    }
+
+    /**
+     * Returns how many variations enclose the current token; 0 on the main
+     * line. A `VARIATION_START` counts as inside the variation it opens
+     * and a `VARIATION_END` as outside the one it closes.
+     */
+    public int depth() {
+        return depth;
+    }
+
+    private int indexOf(char c, int from) {
+        int p = from;
+        while (p < limit && text.charAt(p) != c) {
+            p++;
+        }
+        return p;
+    }
+
+    private int lineEnd(int from) {
+        return indexOf('\n', from);
+    }
+
+    private int tagEnd(int from) {
+        int p = from;
+        boolean quoted = false;
+        while (p < limit) {
+            char c = text.charAt(p++);
+            if (c == '\\' && quoted) {
+                p++;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if ((c == ']' && !quoted) || c == '\n') {
+                break;
+            }
+        }
+        return Math.min(p, limit);
+    }
+
+    private int digitsEnd(int from) {
+        int p = from;
+        while (p < limit && text.charAt(p) >= '0' && text.charAt(p) <= '9') {
+            p++;
+        }
+        return p;
+    }
+
+    private int tokenEnd(int from) {
+        int p = from;
+        while (p < limit) {
+            char c = text.charAt(p);
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '{'
+                || c == '}' || c == '(' || c == ')' || c == ';' || c == '['
+                || c == ']' || c == '$') {
+                break;
+            }
+            p++;
+        }
+        return p;
+    }
+
+    private boolean isResult(int from, int to) {
+        return matches(from, to, "1-0") || matches(from, to, "0-1")
+            || matches(from, to, "1/2-1/2") || matches(from, to, "*");
+    }
+
+    private boolean matches(int from, int to, String s) {
+        if (to - from != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (text.charAt(from + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,327 @@
+import java.util.Arrays;
+
+/**
+ * An opening explorer built from game replays. For every position reached
+ * within the first `maxPly` half-moves it counts the games that reached
+ * it, how those games ended and which moves were played next.
+ *
+ * Positions are keyed by their Zobrist hash. The counters live in
+ * open-addressing tables of primitive arrays, so adding a game boxes
+ * nothing and a position costs 40 bytes plus 20 per distinct next move,
+ * at most double that while the tables are half full.
+ *
+ * A tree is not thread-safe. To aggregate in parallel, build one tree per
+ * thread and `merge` them.
+ */
+public class OpeningTree {
+
+    public static final int WHITE_WINS = 0;
+    public static final int DRAWS = 1;
+    public static final int BLACK_WINS = 2;
+
+    private static final long START_HASH = new Bitboard().hash();
+
+    private final int maxPly;
+
+    // positions: a slot is free while its game count is 0
+    private long[] keys;
+    private long[] games;
+    private long[][] results = new long[3][];
+    private int positions = 0;
+
+    // next moves, probed from the slot of their parent's hash, so all the
+    // moves from one position sit in the run of slots that follows it
+    private long[] parents;
+    private int[] moves;
+    private long[] moveCounts;
+    private int edges = 0;
+
+    private final Bitboard board = new Bitboard();
+    // the positions and moves of the game being added, to count each once
+    private long[] seenPositions = new long[64];
+    private long[] seenParents = new long[64];
+    private int[] seenMoves = new int[64];
+
+    /**
+     * @param maxPly the number of half-moves into each game to aggregate
+     */
+    public OpeningTree(int maxPly) {
+        this.maxPly = maxPly;
+        allocatePositions(1 << 12);
+        allocateEdges(1 << 12);
+    }
+
+    private void allocatePositions(int capacity) {
+        keys = new long[capacity];
+        games = new long[capacity];
+        for (int r = 0; r < 3; r++) {
+            results[r] = new long[capacity];
+        }
+    }
+
+    private void allocateEdges(int capacity) {
+        parents = new long[capacity];
+        moves = new int[capacity];
+        moveCounts = new long[capacity];
+    }
+
+    /**
+     * Counts the positions and moves of the first `maxPly` half-moves of
+     * game. Only those moves are lexed and played, straight from the
+     * text, and a game that repeats a position or move within them counts
+     * it once. Counting stops at a move that is not legal. The result is
+     * read from the game's Result tag; games without a decisive or drawn
+     * result are counted but not scored.
+     *
+     * @param game a `String` containing a PGN-formatted chess game
+     */
+    public void add(String game) {
+        int result = result(PgnReader.tagValue("Result",
+            PgnHeader.parse(game)));
+        board.reset();
+        count(START_HASH, 1, result);
+        long parent = START_HASH;
+        MovetextLexer lexer = new MovetextLexer(game);
+        for (int ply = 0; ply < maxPly && lexer.nextMove(); ply++) {
+            int san = SanDecoder.decode(game, lexer.start(), lexer.end());
+            int move = MoveGenerator.resolve(board, san);
+            if (!board.tryApply(san, ply % 2)) {
+                return; // the positions after it would be wrong
+            }
+            if (!seen(parent, move, ply)) {
+                countMove(parent, move, 1);
+            }
+            parent = board.hash();
+            if (!seen(parent, ply)) {
+                count(parent, 1, result);
+            }
+        }
+    }
+
+    // whether the game reached hash before ply, which is recorded
+    private boolean seen(long hash, int ply) {
+        if (ply == seenPositions.length) {
+            seenPositions = Arrays.copyOf(seenPositions, 2 * ply);
+        }
+        seenPositions[ply] = hash;
+        if (hash == START_HASH) {
+            return true;
+        }
+        for (int i = 0; i < ply; i++) {
+            if (seenPositions[i] == hash) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // whether the game played move from parent before ply, which is
+    // recorded
+    private boolean seen(long parent, int move, int ply) {
+        if (ply == seenParents.length) {
+            seenParents = Arrays.copyOf(seenParents, 2 * ply);
+            seenMoves = Arrays.copyOf(seenMoves, 2 * ply);
+        }
+        seenParents[ply] = parent;
+        seenMoves[ply] = move;
+        for (int i = 0; i < ply; i++) {
+            if (seenParents[i] == parent && seenMoves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int result(String result) {
+        if (result.equals("1-0")) {
+            return WHITE_WINS;
+        } else if (result.equals("1/2-1/2")) {
+            return DRAWS;
+        } else if (result.equals("0-1")) {
+            return BLACK_WINS;
+        } else {
+            return -1;
+        }
+    }
+
+    private void count(long hash, long n, int result) {
+        int slot = find(hash);
+        if (games[slot] == 0) {
+            keys[slot] = hash;
+            positions++;
+        }
+        games[slot] += n;
+        if (result >= 0) {
+            results[result][slot] += n;
+        }
+        if (positions * 2 > keys.length) {
+            growPositions();
+        }
+    }
+
+    private int find(long hash) {
+        int mask = keys.length - 1;
+        int slot = slot(hash, mask);
+        while (games[slot] != 0 && keys[slot] != hash) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void growPositions() {
+        long[] oldKeys = keys;
+        long[] oldGames = games;
+        long[][] oldResults = results.clone();
+        allocatePositions(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldGames[i] != 0) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                games[slot] = oldGames[i];
+                for (int r = 0; r < 3; r++) {
+                    results[r][slot] = oldResults[r][i];
+                }
+            }
+        }
+    }
+
+    private void countMove(long parent, int move, long n) {
+        int mask = parents.length - 1;
+        int slot = slot(parent, mask);
+        while (moveCounts[slot] != 0
+            && (parents[slot] != parent || moves[slot] != move)) {
+            slot = (slot + 1) & mask;
+        }
+        if (moveCounts[slot] == 0) {
+            parents[slot] = parent;
+            moves[slot] = move;
+            edges++;
+        }
+        moveCounts[slot] += n;
+        if (edges * 2 > parents.length) {
+            growEdges();
+        }
+    }
+
+    private void growEdges() {
+        long[] oldParents = parents;
+        int[] oldMoves = moves;
+        long[] oldCounts = moveCounts;
+        allocateEdges(oldParents.length * 2);
+        int mask = parents.length - 1;
+        for (int i = 0; i < oldParents.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = slot(oldParents[i], mask);
+                while (moveCounts[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                parents[slot] = oldParents[i];
+                moves[slot] = oldMoves[i];
+                moveCounts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int slot(long hash, int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * Adds the counts of other to this tree.
+     */
+    public void merge(OpeningTree other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.games[i] != 0) {
+                long hash = other.keys[i];
+                count(hash, other.games[i], -1);
+                int slot = find(hash);
+                for (int r = 0; r < 3; r++) {
+                    results[r][slot] += other.results[r][i];
+                }
+            }
+        }
+        for (int i = 0; i < other.parents.length; i++) {
+            if (other.moveCounts[i] != 0) {
+                countMove(other.parents[i], other.moves[i],
+                    other.moveCounts[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of distinct positions in the tree, including the
+     * starting position.
+     */
+    public int positions() {
+        return positions;
+    }
+
+    /**
+     * Returns the number of games that reached the position with the given
+     * hash within `maxPly` half-moves.
+     */
+    public long games(long hash) {
+        return games[find(hash)];
+    }
+
+    /**
+     * Returns how many of the games reaching a position ended with result,
+     * one of `WHITE_WINS`, `DRAWS` or `BLACK_WINS`.
+     */
+    public long results(long hash, int result) {
+        int slot = find(hash);
+        return games[slot] == 0 ? 0 : results[result][slot];
+    }
+
+    /**
+     * Writes the moves played from the position with the given hash into
+     * moves, packed as by `MoveGenerator`, and how often each was played
+     * into counts, most played first. A move is counted as the same move
+     * however its SAN was written.
+     *
+     * @param moves an array of at least `MoveGenerator.MAX_MOVES` entries
+     * @param counts an array as long as moves
+     * @return the number of moves written
+     */
+    public int nextMoves(long hash, int[] moves, long[] counts) {
+        int mask = parents.length - 1;
+        int n = 0;
+        for (int slot = slot(hash, mask); moveCounts[slot] != 0;
+            slot = (slot + 1) & mask) {
+            if (parents[slot] == hash && n < moves.length) {
+                moves[n] = this.moves[slot];
+                counts[n] = moveCounts[slot];
+                n++;
+            }
+        }
+        // insertion sort by count; a position rarely has more than a few
+        // dozen distinct replies
+        for (int i = 1; i < n; i++) {
+            int move = moves[i];
+            long count = counts[i];
+            int j = i - 1;
+            while (j >= 0 && counts[j] < count) {
+                moves[j + 1] = moves[j];
+                counts[j + 1] = counts[j];
+                j--;
+            }
+            moves[j + 1] = move;
+            counts[j + 1] = count;
+        }
+        return n;
+    }
+
+    /**
+     * Returns the number of half-moves into each game that are counted.
+     */
+    public int maxPly() {
+        return maxPly;
+    }
+
+    /**
+     * Returns the hash of the starting position, the root of every tree.
+     */
+    public static long startHash() {
+        return START_HASH;
+    }
+}
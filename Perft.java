@@ -0,0 +1,87 @@
+/**
+ * Counts the leaf nodes of the legal move tree to a fixed depth (perft)
+ * from well-known test positions and checks them against published
+ * reference counts. It also reports nodes per second, so a change to the
+ * board representation or move generator can be checked for correctness
+ * and speed at the same time.
+ *
+ * Usage: java Perft [maxDepth]
+ *
+ * @see https://www.chessprogramming.org/Perft_Results
+ */
+public class Perft {
+
+    static final String[] NAMES = {"start", "kiwipete",
+        "position 3", "position 4", "position 5", "position 6"};
+    static final String[] FENS = {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 "
+            + "1",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - "
+            + "0 10"
+    };
+    // reference node counts for depth 1, 2, ...
+    static final long[][] EXPECTED = {
+        {20, 400, 8902, 197281, 4865609, 119060324},
+        {48, 2039, 97862, 4085603, 193690690},
+        {14, 191, 2812, 43238, 674624, 11030083},
+        {6, 264, 9467, 422333, 15833292},
+        {44, 1486, 62379, 2103487, 89941194},
+        {46, 2079, 89890, 3894594, 164075551}
+    };
+
+    /**
+     * Returns the number of leaf nodes depth plies below board.
+     */
+    public static long perft(Bitboard board, int depth) {
+        int[][] moves = new int[Math.max(depth, 1)][MoveGenerator.MAX_MOVES];
+        return perft(board, depth, moves);
+    }
+
+    private static long perft(Bitboard board, int depth, int[][] moves) {
+        int[] list = moves[depth - 1];
+        int n = MoveGenerator.generate(board, list);
+        if (depth == 1) {
+            return n; // bulk count the last ply
+        }
+        long nodes = 0;
+        for (int i = 0; i < n; i++) {
+            board.makeMove(list[i]);
+            nodes += perft(board, depth - 1, moves);
+            board.unmakeMove();
+        }
+        return nodes;
+    }
+
+    public static void main(String[] args) {
+        int maxDepth = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        boolean allPassed = true;
+        long totalNodes = 0;
+        long totalNanos = 0;
+        for (int p = 0; p < FENS.length; p++) {
+            Bitboard board = Bitboard.fromFen(FENS[p]);
+            int depths = Math.min(maxDepth, EXPECTED[p].length);
+            for (int depth = 1; depth <= depths; depth++) {
+                long start = System.nanoTime();
+                long nodes = perft(board, depth);
+                long nanos = System.nanoTime() - start;
+                boolean ok = nodes == EXPECTED[p][depth - 1];
+                allPassed &= ok;
+                totalNodes += nodes;
+                totalNanos += nanos;
+                System.out.format("%-10s depth %d: %12d nodes %s %10.0f nps%n",
+                    NAMES[p], depth, nodes,
+                    ok ? "ok  " : "FAIL (expected " + EXPECTED[p][depth - 1]
+                        + ")", nodes * 1e9 / Math.max(nanos, 1));
+            }
+        }
+        System.out.format("total: %d nodes, %.0f nps%n", totalNodes,
+            totalNodes * 1e9 / Math.max(totalNanos, 1));
+        if (!allPassed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * A problem found in one game, reported instead of stopping the run. It
+ * says which game, at which half-move and on which token replay gave up,
+ * and why. See `PgnReader.finalPosition(String, Bitboard, long, Handler)`.
+ */
+public class PgnError {
+
+    /**
+     * Receives the games that could not be replayed.
+     */
+    public interface Handler {
+        void error(PgnError error);
+    }
+
+    /** The reason given for a token that is not a move. */
+    public static final String UNRECOGNIZED_MOVE = "unrecognized move";
+    /** The reason given for a move that no piece can make. */
+    public static final String NO_PIECE = "no piece can make this move";
+    /** The reason given for a move against the rules, such as into check. */
+    public static final String ILLEGAL_MOVE = "illegal move";
+
+    /** The file the game came from, or null if it is not known. */
+    public final String source;
+    /** The position of the game in its source, counting from 0. */
+    public final long gameIndex;
+    /** The half-move that failed, counting from 1, or 0 if none did. */
+    public final int ply;
+    /** The text of the failed move, or null. */
+    public final String token;
+    public final String reason;
+
+    public PgnError(long gameIndex, int ply, String token, String reason) {
+        this(null, gameIndex, ply, token, reason);
+    }
+
+    public PgnError(String source, long gameIndex, int ply, String token,
+        String reason) {
+        this.source = source;
+        this.gameIndex = gameIndex;
+        this.ply = ply;
+        this.token = token;
+        this.reason = reason;
+    }
+
+    /**
+     * Returns this error for the game of the same number in source.
+     */
+    public PgnError in(String source) {
+        return new PgnError(source, gameIndex, ply, token, reason);
+    }
+
+    /**
+     * Returns a line such as `a.pgn: game 12, 7. Nf9: unrecognized move`,
+     * with the game numbered from 1, so game 12 has `gameIndex` 11, and
+     * the move numbered as in the movetext. A move without a token is
+     * given by its number alone.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (source != null) {
+            sb.append(source).append(": ");
+        }
+        sb.append("game ").append(gameIndex + 1);
+        if (ply > 0) {
+            sb.append(", ").append((ply + 1) / 2)
+                .append(ply % 2 == 1 ? "." : "...");
+            if (token != null) {
+                sb.append(' ').append(token);
+            }
+        }
+        return sb.append(": ").append(reason).toString();
+    }
+}
@@ -0,0 +1,251 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the games of a multi-game PGN file one at a time. Only the game
+ * currently being assembled is held in memory, so heap use depends on the
+ * longest game and not on the size of the file.
+ *
+ * A new game starts at the first tag pair that follows movetext. Tag-like
+ * lines inside brace comments are not treated as game boundaries.
+ *
+ * The input is split on raw bytes. A game made only of ASCII bytes, which
+ * is nearly every game, becomes a `String` by a plain copy; only a game
+ * with other bytes, in practice a tag value such as a player's name, is
+ * decoded as UTF-8. Line endings are normalized to \n.
+ */
+public class PgnGameReader implements Iterator<String>, Closeable {
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[1 << 16];
+    private int pos = 0;
+    private int limit = 0;
+    private boolean skipLineFeed = false; // last line ended in \r
+
+    private byte[] game = new byte[1 << 12];
+    private int length = 0; // bytes of game, perhaps a pending tag line
+    private int nonAscii = 0; // OR of the bytes in game
+    private String next = null;
+    private boolean done = false;
+    private long readNanos = 0; // time blocked reading, when measured
+
+    /**
+     * Reads the file named by path, which may be compressed with gzip,
+     * bzip2 or Zstandard. A compressed file is decompressed on a
+     * background thread while the games are read; see `PgnInput`.
+     */
+    public PgnGameReader(Path path) throws IOException {
+        this(PgnInput.openInBackground(path));
+    }
+
+    public PgnGameReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Returns a lazily populated stream of the games in the file named by
+     * path. Closing the stream closes the file.
+     *
+     * @param path the relative or absolute path of the PGN file
+     * @return a `Stream` with one `String` per game
+     */
+    public static Stream<String> games(Path path) throws IOException {
+        PgnGameReader games = new PgnGameReader(path);
+        return games.stream();
+    }
+
+    /**
+     * Returns a lazily populated stream of the remaining games. Closing the
+     * stream closes this reader.
+     */
+    public Stream<String> stream() {
+        Spliterator<String> split = Spliterators.spliteratorUnknownSize(this,
+            Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(split, false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !done) {
+            try {
+                next = readGame();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            done = (next == null);
+        }
+        return next != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String result = next;
+        next = null;
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private String readGame() throws IOException {
+        long start = PgnMetrics.start();
+        readNanos = 0;
+        boolean inMoves = false;
+        boolean inComment = false;
+        boolean hasContent = false;
+        // a pending tag line carried over from the previous game comes
+        // first; it is tested again below like any other line
+        int lineStart = 0;
+        int lineEnd = length > 0 ? length : readLine();
+        while (lineEnd >= 0) {
+            boolean isTag = !inComment && game[lineStart] == '[';
+            boolean isBlank = isBlank(lineStart, lineEnd);
+            if (isTag && inMoves) {
+                break; // this tag belongs to the next game
+            }
+            if (!isTag && !isBlank && !inComment) {
+                inMoves = true;
+            }
+            if (!isTag) {
+                inComment = endsInComment(lineStart, lineEnd, inComment);
+            }
+            hasContent |= !isBlank;
+            lineStart = lineEnd;
+            lineEnd = readLine();
+        }
+        String result = hasContent ? text(game, lineStart, nonAscii) : null;
+        // time spent waiting for input is not parsing
+        PgnMetrics.parsed(start + readNanos, lineStart);
+        // keep the tag line that ended the game, if any, for the next one
+        length -= lineStart;
+        System.arraycopy(game, lineStart, game, 0, length);
+        nonAscii = 0;
+        for (int i = 0; i < length; i++) {
+            nonAscii |= game[i];
+        }
+        return result;
+    }
+
+    /**
+     * Appends the next line of input and a \n to game and returns the new
+     * length of game, or -1 at the end of the input.
+     */
+    private int readLine() throws IOException {
+        boolean any = false;
+        while (true) {
+            if (pos == limit) {
+                long readStart = PgnMetrics.start();
+                limit = in.read(buffer);
+                if (readStart != 0) {
+                    readNanos += System.nanoTime() - readStart;
+                }
+                pos = 0;
+                if (limit < 0) {
+                    limit = 0;
+                    if (!any) {
+                        return -1;
+                    }
+                    break;
+                }
+            }
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (buffer[pos] == '\n') {
+                    pos++;
+                    continue;
+                }
+            }
+            any = true;
+            int start = pos;
+            while (pos < limit && buffer[pos] != '\n' && buffer[pos] != '\r') {
+                nonAscii |= buffer[pos];
+                pos++;
+            }
+            append(start, pos);
+            if (pos < limit) {
+                skipLineFeed = buffer[pos] == '\r';
+                pos++;
+                break;
+            }
+        }
+        append(-1, -1);
+        return length;
+    }
+
+    /**
+     * Appends buffer[from, to) to game, or a \n if from is negative.
+     */
+    private void append(int from, int to) {
+        int n = from < 0 ? 1 : to - from;
+        if (length + n > game.length) {
+            game = Arrays.copyOf(game, Math.max(game.length * 2, length + n));
+        }
+        if (from < 0) {
+            game[length++] = '\n';
+        } else {
+            System.arraycopy(buffer, from, game, length, n);
+            length += n;
+        }
+    }
+
+    /**
+     * Returns bytes[0, length) as a `String`, copying them as they are if
+     * nonAscii, the OR of the bytes, shows they are all ASCII and decoding
+     * them as UTF-8 otherwise.
+     */
+    static String text(byte[] bytes, int length, int nonAscii) {
+        return new String(bytes, 0, length, nonAscii < 0
+            ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+    }
+
+    private boolean isBlank(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if ((game[i] & 0xFF) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a brace comment is still open at the end of the line
+     * in game[from, to).
+     */
+    private boolean endsInComment(int from, int to, boolean inComment) {
+        for (int i = from; i < to; i++) {
+            byte c = game[i];
+            if (inComment) {
+                if (c == '}') {
+                    inComment = false;
+                }
+            } else if (c == '{') {
+                inComment = true;
+            } else if (c == ';') {
+                break; // rest of line comment
+            }
+        }
+        return inComment;
+    }
+}
@@ -0,0 +1,154 @@
+import java.util.Arrays;
+
+/**
+ * The tag pairs of one game, read in a single pass over its tag section.
+ * Tag names are matched exactly, so looking up "White" never finds
+ * "WhiteElo" or text in the movetext.
+ *
+ * @see http://www.saremba.de/chessgml/standards/pgn/pgn-complete.htm#c8.1
+ */
+public class PgnHeader {
+
+    private String[] names = new String[8];
+    private String[] values = new String[8];
+    private int size = 0;
+    private int movetextStart = 0;
+
+    /**
+     * Reads the tag section at the start of game. Parsing stops at the
+     * first character that does not belong to a tag pair.
+     *
+     * @param game a `String` containing the PGN text of a chess game
+     * @return the game's tag pairs
+     */
+    public static PgnHeader parse(CharSequence game) {
+        long start = PgnMetrics.start();
+        PgnHeader header = new PgnHeader();
+        header.movetextStart = header.parse(game, 0);
+        PgnMetrics.parsed(start);
+        return header;
+    }
+
+    private int parse(CharSequence game, int pos) {
+        int length = game.length();
+        while (pos < length) {
+            char c = game.charAt(pos);
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                pos++;
+            } else if (c == '%'
+                && (pos == 0 || game.charAt(pos - 1) == '\n')) {
+                while (pos < length && game.charAt(pos) != '\n') {
+                    pos++; // escape line
+                }
+            } else if (c == '[') {
+                pos = parseTag(game, pos + 1);
+            } else {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    private int parseTag(CharSequence game, int pos) {
+        int length = game.length();
+        while (pos < length && Character.isWhitespace(game.charAt(pos))) {
+            pos++;
+        }
+        int nameStart = pos;
+        while (pos < length && !Character.isWhitespace(game.charAt(pos))
+            && game.charAt(pos) != '"' && game.charAt(pos) != ']') {
+            pos++;
+        }
+        String name = game.subSequence(nameStart, pos).toString();
+        while (pos < length && game.charAt(pos) != '"'
+            && game.charAt(pos) != ']') {
+            pos++;
+        }
+        if (pos >= length || game.charAt(pos) == ']') {
+            return pos + 1; // malformed tag without a value
+        }
+        StringBuilder value = null;
+        int valueStart = ++pos;
+        while (pos < length && game.charAt(pos) != '"') {
+            if (game.charAt(pos) == '\\' && pos + 1 < length) {
+                if (value == null) {
+                    value = new StringBuilder();
+                    value.append(game, valueStart, pos);
+                }
+                pos++; // keep only the escaped character
+            }
+            if (value != null) {
+                value.append(game.charAt(pos));
+            }
+            pos++;
+        }
+        add(name, value != null ? value.toString()
+            : game.subSequence(valueStart, Math.min(pos, length)).toString());
+        while (pos < length && game.charAt(pos) != ']'
+            && game.charAt(pos) != '\n') {
+            pos++;
+        }
+        return pos + 1;
+    }
+
+    /**
+     * Returns a tag value as it appears between its quotes with the
+     * backslash escapes resolved, as `parse` does, or value itself if it
+     * has none.
+     */
+    static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                c = value.charAt(++i);
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    void add(String name, String value) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size] = name;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Returns the value of the named tag, or null if the game has none.
+     */
+    public String get(String tagName) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(tagName)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String name(int i) {
+        return names[i];
+    }
+
+    public String value(int i) {
+        return values[i];
+    }
+
+    /**
+     * Returns the index in the parsed text where the movetext begins.
+     */
+    public int movetextStart() {
+        return movetextStart;
+    }
+}
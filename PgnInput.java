@@ -0,0 +1,229 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens PGN files that may be compressed with gzip, bzip2 or Zstandard,
+ * as published by Lichess and TWIC, and decompresses them while they are
+ * read. The format is recognized from the first bytes of the file, not
+ * its name.
+ *
+ * gzip is handled by the JDK. bzip2 and Zstandard use the pure-Java codecs
+ * of Apache Commons Compress and aircompressor when they are on the class
+ * path; opening such a file without them fails with an `IOException`
+ * naming the library to add.
+ */
+public class PgnInput {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int BUFFERS_AHEAD = 8;
+
+    private static final String BZIP2_STREAM =
+        "org.apache.commons.compress.compressors.bzip2"
+            + ".BZip2CompressorInputStream";
+    private static final String ZSTD_STREAM =
+        "io.airlift.compress.zstd.ZstdInputStream";
+
+    /**
+     * Returns whether path names a PGN file, compressed or not.
+     */
+    public static boolean isPgnFile(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return name.endsWith(".pgn") || name.endsWith(".pgn.gz")
+            || name.endsWith(".pgn.bz2") || name.endsWith(".pgn.zst");
+    }
+
+    /**
+     * Opens a file, decompressing it on the calling thread if it is
+     * compressed.
+     */
+    public static InputStream open(Path path) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(path),
+            BUFFER_SIZE);
+        try {
+            return decompress(in);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a file like `open`, but if it is compressed, decompresses it
+     * on a background thread that stays a few buffers ahead of the
+     * reader, so decompression overlaps with parsing and replay.
+     */
+    public static InputStream openInBackground(Path path)
+        throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(path),
+            BUFFER_SIZE);
+        try {
+            InputStream decompressed = decompress(in);
+            if (decompressed == in) {
+                return in;
+            }
+            return new BackgroundStream(decompressed, path.toString());
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static InputStream decompress(InputStream in)
+        throws IOException {
+        in.mark(4);
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = in.read();
+            magic = (magic << 8) | (b < 0 ? 0 : b);
+        }
+        in.reset();
+        if (magic >>> 16 == 0x1F8B) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        } else if (magic >>> 8 == 0x425A68) { // "BZh"
+            return codec(BZIP2_STREAM, "bzip2", "commons-compress", in);
+        } else if (magic == 0x28B52FFD) {
+            return codec(ZSTD_STREAM, "Zstandard", "aircompressor", in);
+        } else {
+            return in;
+        }
+    }
+
+    /**
+     * Wraps in in the decompressing stream className, loaded by name so
+     * that its library stays optional.
+     */
+    static InputStream codec(String className, String format,
+        String library, InputStream in) throws IOException {
+        try {
+            Class<?> type = Class.forName(className);
+            if (className.equals(BZIP2_STREAM)) {
+                // true: read on past the end of each concatenated stream
+                Constructor<?> c = type.getConstructor(InputStream.class,
+                    boolean.class);
+                return (InputStream) c.newInstance(in, true);
+            }
+            return (InputStream) type.getConstructor(InputStream.class)
+                .newInstance(in);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(format + " input needs " + library
+                + " on the class path");
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("cannot open " + format + " input",
+                e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("cannot open " + format + " input", e);
+        }
+    }
+
+    /**
+     * Reads a stream on its own thread into a bounded queue of buffers.
+     */
+    private static class BackgroundStream extends InputStream {
+        private static final byte[] END = new byte[0];
+
+        private final BlockingQueue<byte[]> buffers =
+            new ArrayBlockingQueue<>(BUFFERS_AHEAD);
+        private final InputStream source;
+        private final Thread thread;
+        private volatile Throwable failure;
+        private byte[] buffer = new byte[0];
+        private int pos = 0;
+
+        BackgroundStream(InputStream source, String name) {
+            this.source = source;
+            this.thread = new Thread(this::fill, "decompress " + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void fill() {
+            boolean closed = false;
+            try {
+                byte[] b = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = source.read(b)) >= 0) {
+                    if (n > 0) {
+                        buffers.put(n == b.length ? b : Arrays.copyOf(b, n));
+                        b = new byte[BUFFER_SIZE];
+                    }
+                }
+            } catch (InterruptedException e) {
+                closed = true; // by the reader, which wants no more
+            } catch (Throwable t) {
+                // the codecs report corrupt input with unchecked exceptions,
+                // and a missing optional codec class with an Error
+                failure = t;
+            } finally {
+                try {
+                    if (!closed) {
+                        buffers.put(END);
+                    }
+                } catch (InterruptedException e) {
+                    // closed by the reader
+                }
+            }
+        }
+
+        private boolean next() throws IOException {
+            while (pos == buffer.length) {
+                if (buffer == END) {
+                    Throwable t = failure;
+                    if (t instanceof IOException) {
+                        throw (IOException) t;
+                    } else if (t instanceof Error) {
+                        throw (Error) t;
+                    } else if (t != null) {
+                        throw new IOException(t);
+                    }
+                    return false;
+                }
+                try {
+                    buffer = buffers.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                pos = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return next() ? buffer[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!next()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.length - pos);
+            System.arraycopy(buffer, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            thread.interrupt();
+            source.close();
+        }
+    }
+}
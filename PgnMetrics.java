@@ -0,0 +1,381 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Opt-in counters and timers for the parsing and replay hot paths: games,
+ * half-moves and bytes read, time spent splitting games and parsing tags
+ * (not counting time blocked on input) versus replaying moves, a histogram
+ * of move types, the number of moves the lenient replay methods skipped
+ * because they could not be played, and the number of games skipped as
+ * malformed.
+ *
+ * Metrics are off unless `enable` is called or the JVM is started with
+ * -Dpgnreader.metrics=true. While they are off each hook is a test of one
+ * volatile static field. While they are on the counts go to `LongAdder`s,
+ * which threads update without contending. Once enabled, the counts are
+ * published as the JMX MBean `pgnreader:type=PgnMetrics` and can be
+ * logged periodically with `startLogging`.
+ */
+public class PgnMetrics {
+
+    /**
+     * The attributes of the MBean. Times are in milliseconds and rates
+     * are averages since the metrics were enabled or reset.
+     */
+    public interface Stats {
+        long getGames();
+        long getPlies();
+        long getBytes();
+        long getParseMillis();
+        long getReplayMillis();
+        long getFallbacks();
+        long getMalformedGames();
+        double getGamesPerSecond();
+        double getPliesPerSecond();
+        double getBytesPerSecond();
+        /** Move counts indexed by move type + 1; index 0 is unrecognized. */
+        long[] getMoveTypes();
+        String[] getMoveTypeNames();
+        void reset();
+    }
+
+    /** Names of the move types of `PgnReader.determineMoveType`, + 1. */
+    public static final String[] MOVE_TYPE_NAMES = {"unrecognized",
+        "pawn move", "rook move", "pawn capture", "bishop move",
+        "king move", "queen move", "knight move", "king-side castle",
+        "queen-side castle", "rook disambig", "knight disambig",
+        "queen disambig", "bishop disambig", "knight 2 disambig",
+        "queen 2 disambig", "bishop 2 disambig"};
+
+    public static final String OBJECT_NAME = "pgnreader:type=PgnMetrics";
+
+    // volatile so that threads already running see enable(); a volatile
+    // read costs no more than a plain one on the common platforms
+    static volatile boolean enabled = false;
+
+    private static final Counter games = new Counter();
+    private static final Counter plies = new Counter();
+    private static final Counter bytes = new Counter();
+    private static final Counter parseNanos = new Counter();
+    private static final Counter replayNanos = new Counter();
+    private static final Counter fallbacks = new Counter();
+    private static final Counter malformed = new Counter();
+    private static final Counter[] moveTypes =
+        new Counter[MOVE_TYPE_NAMES.length];
+    private static volatile long startNanos = System.nanoTime();
+    private static boolean registered = false;
+
+    static {
+        for (int i = 0; i < moveTypes.length; i++) {
+            moveTypes[i] = new Counter();
+        }
+        if (Boolean.getBoolean("pgnreader.metrics")) {
+            enable();
+        }
+    }
+
+    private PgnMetrics() {
+    }
+
+    /**
+     * Turns the metrics on and registers the MBean. Call it before
+     * starting the work to be measured.
+     */
+    public static synchronized void enable() {
+        if (!enabled) {
+            reset();
+            enabled = true;
+        }
+        if (!registered) {
+            registered = true;
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.registerMBean(new StandardMBean(new View(),
+                    Stats.class), new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                System.err.format("cannot register %s: %s%n", OBJECT_NAME,
+                    e);
+            }
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Zeroes every count and restarts the clock for the rates. Safe to
+     * call, for example over JMX, while other threads are counting: no
+     * update is lost, though one made during the reset may land on either
+     * side of it.
+     */
+    public static synchronized void reset() {
+        games.reset();
+        plies.reset();
+        bytes.reset();
+        parseNanos.reset();
+        replayNanos.reset();
+        fallbacks.reset();
+        malformed.reset();
+        for (Counter count : moveTypes) {
+            count.reset();
+        }
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the time to pass to a later `parsed` or `replayed` call, or
+     * 0 if metrics are off.
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Counts the bytes of input split into one game, and the time since
+     * start.
+     */
+    static void parsed(long start, int gameBytes) {
+        if (enabled) {
+            parseNanos.add(System.nanoTime() - start);
+            bytes.add(gameBytes);
+        }
+    }
+
+    /**
+     * Counts the time since start as spent parsing, without input.
+     */
+    static void parsed(long start) {
+        if (enabled) {
+            parseNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Counts one replayed game of n half-moves, and the time since start.
+     */
+    static void replayed(long start, int n) {
+        if (enabled) {
+            replayNanos.add(System.nanoTime() - start);
+            games.increment();
+            plies.add(n);
+        }
+    }
+
+    /**
+     * Counts one move of the given `determineMoveType` type, or -1.
+     */
+    static void moveType(int type) {
+        if (enabled) {
+            moveTypes[type + 1].increment();
+        }
+    }
+
+    /**
+     * Counts one move that lenient replay skipped.
+     */
+    static void fallback() {
+        if (enabled) {
+            fallbacks.increment();
+        }
+    }
+
+    /**
+     * Counts one game skipped because it could not be replayed.
+     */
+    static void malformed() {
+        if (enabled) {
+            malformed.increment();
+        }
+    }
+
+    /**
+     * Prints a summary line to out every period seconds, with the rates
+     * over that period, on a daemon thread. Shut the returned executor
+     * down to stop.
+     */
+    public static ScheduledExecutorService startLogging(long period,
+        PrintStream out) {
+        ScheduledExecutorService logger =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "pgn-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+        logger.scheduleAtFixedRate(new Runnable() {
+            long lastNanos = System.nanoTime();
+            long lastGames = games.sum();
+            long lastPlies = plies.sum();
+            long lastBytes = bytes.sum();
+
+            @Override
+            public void run() {
+                long now = System.nanoTime();
+                long g = games.sum();
+                long p = plies.sum();
+                long b = bytes.sum();
+                double seconds = Math.max(now - lastNanos, 1) / 1e9;
+                out.println(summary((g - lastGames) / seconds,
+                    (p - lastPlies) / seconds, (b - lastBytes) / seconds));
+                lastNanos = now;
+                lastGames = g;
+                lastPlies = p;
+                lastBytes = b;
+            }
+        }, period, period, TimeUnit.SECONDS);
+        return logger;
+    }
+
+    /**
+     * Returns a summary line with the rates since the metrics were enabled
+     * or reset.
+     */
+    public static String summary() {
+        double seconds = Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+        return summary(games.sum() / seconds, plies.sum() / seconds,
+            bytes.sum() / seconds);
+    }
+
+    private static String summary(double gamesPerSecond,
+        double pliesPerSecond, double bytesPerSecond) {
+        double parse = parseNanos.sum() / 1e9;
+        double replay = replayNanos.sum() / 1e9;
+        return String.format("pgn: %d games, %.0f games/s, %.0f plies/s,"
+            + " %.1f MB/s, parse %.1f s, replay %.1f s, %d fallbacks,"
+            + " %d malformed", games.sum(), gamesPerSecond, pliesPerSecond,
+            bytesPerSecond / 1e6, parse, replay, fallbacks.sum(),
+            malformed.sum());
+    }
+
+    /**
+     * Returns the move type histogram as one line, most common first.
+     */
+    public static String moveTypeSummary() {
+        long[] counts = new View().getMoveTypes();
+        Integer[] order = new Integer[counts.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b],
+            counts[a]));
+        StringBuilder sb = new StringBuilder("pgn move types:");
+        String separator = " ";
+        for (int i : order) {
+            if (counts[i] > 0) {
+                sb.append(separator).append(MOVE_TYPE_NAMES[i]).append(' ')
+                    .append(counts[i]);
+                separator = ", ";
+            }
+        }
+        return sb.toString();
+    }
+
+    private static class View implements Stats {
+        @Override
+        public long getGames() {
+            return games.sum();
+        }
+
+        @Override
+        public long getPlies() {
+            return plies.sum();
+        }
+
+        @Override
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        @Override
+        public long getParseMillis() {
+            return parseNanos.sum() / 1000000;
+        }
+
+        @Override
+        public long getReplayMillis() {
+            return replayNanos.sum() / 1000000;
+        }
+
+        @Override
+        public long getFallbacks() {
+            return fallbacks.sum();
+        }
+
+        @Override
+        public long getMalformedGames() {
+            return malformed.sum();
+        }
+
+        @Override
+        public double getGamesPerSecond() {
+            return games.sum() / elapsedSeconds();
+        }
+
+        @Override
+        public double getPliesPerSecond() {
+            return plies.sum() / elapsedSeconds();
+        }
+
+        @Override
+        public double getBytesPerSecond() {
+            return bytes.sum() / elapsedSeconds();
+        }
+
+        @Override
+        public long[] getMoveTypes() {
+            long[] counts = new long[moveTypes.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = moveTypes[i].sum();
+            }
+            return counts;
+        }
+
+        @Override
+        public String[] getMoveTypeNames() {
+            return MOVE_TYPE_NAMES.clone();
+        }
+
+        @Override
+        public void reset() {
+            PgnMetrics.reset();
+        }
+
+        private double elapsedSeconds() {
+            return Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+        }
+    }
+
+    /**
+     * A `LongAdder` that resets by moving its zero rather than by clearing
+     * the adder, which would drop updates made while it clears.
+     */
+    private static class Counter {
+        private final LongAdder adder = new LongAdder();
+        private volatile long zero = 0;
+
+        void add(long n) {
+            adder.add(n);
+        }
+
+        void increment() {
+            adder.increment();
+        }
+
+        long sum() {
+            return adder.sum() - zero;
+        }
+
+        void reset() {
+            zero = adder.sum();
+        }
+    }
+}
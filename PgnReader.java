@@ -1,11 +1,32 @@
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class PgnReader {
 
+    // squares (row * 8 + column) a knight can reach each square from, in
+    // ascending order so the first match is the one a board scan would find
+    private static final int[][] KNIGHT_ORIGINS = new int[64][];
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            long origins = Bitboard.KNIGHT_ATTACKS[sq];
+            KNIGHT_ORIGINS[sq] = new int[Long.bitCount(origins)];
+            for (int i = 0; origins != 0; i++) {
+                KNIGHT_ORIGINS[sq][i] = Long.numberOfTrailingZeros(origins);
+                origins &= origins - 1;
+            }
+        }
+    }
+
     /**
      * Find the tagName tag pair in a PGN game and return its value.
      *
@@ -16,14 +37,19 @@ public class PgnReader {
      * @return the value in the named tag pair
      */
     public static String tagValue(String tagName, String game) {
-        if (!(game.contains(tagName))) {
-            return "NOT GIVEN";
-        }
-        int beginningOfLine = game.indexOf(tagName) - 1;
-        int endOfLine = game.indexOf("]", beginningOfLine) + 1;
-        String eventLine = game.substring(beginningOfLine, endOfLine);
-        String[] splitUpTag = eventLine.split("\"");
-        return splitUpTag[1];
+        return tagValue(tagName, PgnHeader.parse(game));
+    }
+
+    /**
+     * Return the value of the tagName tag pair in an already parsed header.
+     *
+     * @param tagName the name of the tag whose value you want
+     * @param header the tag pairs of a game
+     * @return the value in the named tag pair
+     */
+    public static String tagValue(String tagName, PgnHeader header) {
+        String value = header.get(tagName);
+        return value == null ? "NOT GIVEN" : value;
     }
 
     /**
@@ -36,56 +62,231 @@ public class PgnReader {
      * @return the game's final position in FEN.
      */
     public static String finalPosition(String game) {
-        char[][] chessBoard = initializeBoard();
-        boolean gameExists = true;
-        int tempStartIndex = game.lastIndexOf("]");
-        int gameStartIndex = -1;
-        String tmpMovesOnly = "", gameMovesOnly = "";
-        if (tempStartIndex == -1) {
-            gameStartIndex = game.indexOf("1.");
-            if (gameStartIndex == -1) {
-                gameExists = false;
-            } else {
-                gameMovesOnly = game.substring(gameStartIndex);
+        Bitboard chessBoard = new Bitboard();
+        replay(game, chessBoard, null);
+        return getFEN(chessBoard);
+    }
+
+    /**
+     * Play out the moves in game like `finalPosition(String)`, calling
+     * visitor after every move so that callers can look at each
+     * intermediate position in the same pass. The visitor is given the
+     * move's offsets in game rather than a copy of it.
+     *
+     * @param game a `String` containing a PGN-formatted chess game or opening
+     * @param visitor called after each move
+     * @return the game's final position in FEN.
+     */
+    public static String replay(String game, PositionVisitor visitor) {
+        Bitboard chessBoard = new Bitboard();
+        replay(game, chessBoard, visitor);
+        return getFEN(chessBoard);
+    }
+
+    /**
+     * Play out the moves in game like `finalPosition(String)`, on a board
+     * supplied by the caller. The board is reset first, so one board can
+     * be reused for any number of games.
+     *
+     * @param game a `String` containing a PGN-formatted chess game or opening
+     * @param board the board to play the game on
+     * @return the game's final position in FEN.
+     */
+    public static String finalPosition(String game, Bitboard board) {
+        board.reset();
+        replay(game, board, null);
+        return getFEN(board);
+    }
+
+    /**
+     * Play out the moves in game on board like `finalPosition(String,
+     * Bitboard)`, but stop at the first move that is not legal, report it
+     * to errors and return null. Nothing is printed, and an exception
+     * thrown during replay is reported the same way, so one malformed game
+     * cannot end a run over many.
+     *
+     * @param game a `String` containing a PGN-formatted chess game or opening
+     * @param board the board to play the game on
+     * @param gameIndex the position of game in its input, for the report
+     * @param errors where a game that cannot be replayed is reported
+     * @return the game's final position in FEN, or null
+     */
+    public static String finalPosition(String game, Bitboard board,
+        long gameIndex, PgnError.Handler errors) {
+        return replay(game, board, null, gameIndex, errors);
+    }
+
+    private static void replay(String game, Bitboard chessBoard,
+        PositionVisitor visitor) {
+        long start = PgnMetrics.start();
+        MovetextLexer lexer = new MovetextLexer(game);
+        int ply = 0;
+        while (lexer.nextMove()) {
+            int moveToPerform = SanDecoder.decode(game, lexer.start(),
+                lexer.end());
+            if (PgnMetrics.enabled) {
+                PgnMetrics.moveType(SanDecoder.legacyMoveType(moveToPerform));
             }
-        } else {
-            tmpMovesOnly = game.substring(tempStartIndex);
-            int first1Index = tmpMovesOnly.indexOf("1.");
-            if (first1Index == -1) {
-                gameExists = false;
-            } else {
-                gameMovesOnly = tmpMovesOnly.substring(first1Index);
-            }
-        }
-
-        if (gameExists) {
-            // split the game on any whitespace (spaces and/or newlines)
-            String[] movesArray = gameMovesOnly.split("\\s+");
-            int moveToPerform = -1;
-            boolean toContinue = true;
-            String whiteW = "1-0";
-            String blackW = "0-1";
-            String drawStr = "1/2-1/2";
-            String moveString = "";
-            boolean isWhiteW = false, isBlackW = false, isDraw = false;
-            for (int i = 0; i < movesArray.length; i++) {
-                moveString = movesArray[i];
-                isWhiteW = moveString.equals(whiteW);
-                isBlackW = moveString.equals(blackW);
-                isDraw = moveString.equals(drawStr);
-                if ((i % 3 != 0) && toContinue) {
-                    moveToPerform = determineMoveType(movesArray[i]);
-                    if (!isWhiteW && !isBlackW && !isDraw) {
-                        chessBoard = performMove(moveToPerform, i % 3 - 1,
-                            movesArray[i], chessBoard);
-                        // if white i % 3 - 1 = 0; if black i % 3 - 1 = 1
-                    } else {
-                        toContinue = false;
+            performMove(moveToPerform, ply % 2, chessBoard);
+            ply++;
+            if (visitor != null) {
+                visitor.visit(ply, game, lexer.start(), lexer.end(),
+                    moveToPerform, chessBoard);
+            }
+        }
+        PgnMetrics.replayed(start, ply);
+    }
+
+    /**
+     * Play out the moves in game like `finalPosition(String)`, but start
+     * from the position after the longest opening sequence found in cache,
+     * and add the game's positions every `ReplayCache.STEP` half-moves of
+     * its opening to it.
+     *
+     * @param game a `String` containing a PGN-formatted chess game or opening
+     * @param cache positions reached by earlier games
+     * @return the game's final position in FEN.
+     */
+    public static String finalPosition(String game, ReplayCache cache) {
+        return finalPosition(game, new Bitboard(), cache);
+    }
+
+    /**
+     * Play out the moves in game like `finalPosition(String, ReplayCache)`,
+     * on a board supplied by the caller.
+     *
+     * @param game a `String` containing a PGN-formatted chess game or opening
+     * @param board the board to play the game on
+     * @param cache positions reached by earlier games
+     * @return the game's final position in FEN.
+     */
+    public static String finalPosition(String game, Bitboard board,
+        ReplayCache cache) {
+        return replay(game, board, cache, -1, null);
+    }
+
+    /**
+     * Play out the moves in game like `finalPosition(String, Bitboard,
+     * long, PgnError.Handler)`, reporting a move that is not legal, but
+     * start from the longest opening sequence found in cache like
+     * `finalPosition(String, ReplayCache)`.
+     *
+     * @param game a `String` containing a PGN-formatted chess game or opening
+     * @param board the board to play the game on
+     * @param gameIndex the position of game in its input, for the report
+     * @param errors where a game that cannot be replayed is reported
+     * @param cache positions reached by earlier games, or null to replay
+     *     the game from the starting position
+     * @return the game's final position in FEN, or null
+     */
+    public static String finalPosition(String game, Bitboard board,
+        long gameIndex, PgnError.Handler errors, ReplayCache cache) {
+        return replay(game, board, cache, gameIndex, errors);
+    }
+
+    // replays game on board, from cache unless it is null, reporting to
+    // errors if it is not null and skipping moves that cannot be played if
+    // it is; the cache only ever holds positions of moves that were all
+    // legal
+    private static String replay(String game, Bitboard board,
+        ReplayCache cache, long gameIndex, PgnError.Handler errors) {
+        long start = PgnMetrics.start();
+        int[] opening = new int[cache == null ? 0 : cache.maxPly()];
+        long[] keys = new long[opening.length / ReplayCache.STEP];
+        long[] checks = new long[keys.length];
+        MovetextLexer lexer = new MovetextLexer(game);
+        int n = 0;
+        long prefix = 0;
+        long check = 0;
+        while (n < opening.length && lexer.nextMove()) {
+            int move = SanDecoder.decode(game, lexer.start(), lexer.end());
+            opening[n++] = move;
+            if (move == SanDecoder.INVALID) {
+                break; // keys past it stay 0, which is never cached
+            }
+            prefix = ReplayCache.extend(prefix, move);
+            check = ReplayCache.extendCheck(check, move);
+            if (n % ReplayCache.STEP == 0) {
+                keys[n / ReplayCache.STEP - 1] = prefix;
+                checks[n / ReplayCache.STEP - 1] = check;
+            }
+        }
+        int checkpoint = keys.length;
+        while (checkpoint > 0 && !cache.get(keys[checkpoint - 1],
+            checks[checkpoint - 1], board)) {
+            checkpoint--;
+        }
+        if (cache != null) {
+            cache.record(checkpoint > 0);
+        }
+        if (checkpoint == 0) {
+            board.reset();
+        }
+        int ply = checkpoint * ReplayCache.STEP;
+        boolean cacheable = true;
+        try {
+            for (; ply < n; ply++) {
+                int move = opening[ply];
+                if (PgnMetrics.enabled) {
+                    PgnMetrics.moveType(SanDecoder.legacyMoveType(move));
+                }
+                if (board.tryApply(move, ply % 2)) {
+                    if (cacheable && (ply + 1) % ReplayCache.STEP == 0) {
+                        cache.put(keys[ply / ReplayCache.STEP],
+                            checks[ply / ReplayCache.STEP], board);
                     }
+                } else if (errors == null) {
+                    cacheable = false;
+                    performMove(move, ply % 2, board);
+                } else {
+                    reportIllegal(game, ply, move, board, gameIndex, errors);
+                    return null;
                 }
             }
+            for (; lexer.nextMove(); ply++) {
+                int move = SanDecoder.decode(game, lexer.start(), lexer.end());
+                if (PgnMetrics.enabled) {
+                    PgnMetrics.moveType(SanDecoder.legacyMoveType(move));
+                }
+                if (errors == null) {
+                    performMove(move, ply % 2, board);
+                } else if (!board.tryApply(move, ply % 2)) {
+                    reportIllegal(game, ply, move, board, gameIndex, errors);
+                    return null;
+                }
+            }
+        } catch (RuntimeException e) {
+            if (errors == null) {
+                throw e;
+            }
+            errors.error(new PgnError(gameIndex, ply + 1,
+                token(game, ply), e.toString()));
+            PgnMetrics.malformed();
+            return null;
         }
-        return getFEN(chessBoard);
+        PgnMetrics.replayed(start, ply);
+        return getFEN(board);
+    }
+
+    private static void reportIllegal(String game, int ply, int move,
+        Bitboard board, long gameIndex, PgnError.Handler errors) {
+        int color = ply % 2;
+        errors.error(new PgnError(gameIndex, ply + 1, token(game, ply),
+            move == SanDecoder.INVALID ? PgnError.UNRECOGNIZED_MOVE
+                : board.origin(move, color) < 0 ? PgnError.NO_PIECE
+                    : PgnError.ILLEGAL_MOVE));
+        PgnMetrics.malformed();
+    }
+
+    // the text of the move at ply, found again only when reporting it
+    private static String token(String game, int ply) {
+        MovetextLexer lexer = new MovetextLexer(game);
+        for (int i = 0; i <= ply; i++) {
+            if (!lexer.nextMove()) {
+                return null;
+            }
+        }
+        return game.substring(lexer.start(), lexer.end());
     }
 
     /**
@@ -93,21 +294,41 @@ public class PgnReader {
      *
      * @param path the relative or abolute path of the file to read
      * @return a String containing the content of the file
+     * @throws UncheckedIOException if the file cannot be read
      */
     public static String fileContent(String path) {
         Path file = Paths.get(path);
-        StringBuilder sb = new StringBuilder();
-        try (BufferedReader reader = Files.newBufferedReader(file)) {
-            String line = null;
-            while ((line = reader.readLine()) != null) {
-                // Add the \n that's removed by readline()
-                sb.append(line + "\n");
+        byte[] content = new byte[1 << 16];
+        int length = 0;
+        int nonAscii = 0;
+        try (InputStream in = PgnInput.open(file)) {
+            byte[] buffer = new byte[1 << 16];
+            boolean afterReturn = false;
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                if (length + n + 1 > content.length) {
+                    content = Arrays.copyOf(content,
+                        Math.max(content.length * 2, length + n + 1));
+                }
+                // copy, turning \r\n and \r line ends into \n
+                for (int i = 0; i < n; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n' && afterReturn) {
+                        afterReturn = false;
+                        continue;
+                    }
+                    afterReturn = b == '\r';
+                    content[length++] = afterReturn ? (byte) '\n' : b;
+                    nonAscii |= b;
+                }
             }
         } catch (IOException e) {
-            System.err.format("IOException: %s%n", e);
-            System.exit(1);
+            throw new UncheckedIOException(e);
         }
-        return sb.toString();
+        if (length > 0 && content[length - 1] != '\n') {
+            content[length++] = '\n'; // as if read line by line
+        }
+        return PgnGameReader.text(content, length, nonAscii);
     }
 
     public static char[][] initializeBoard() {
@@ -153,64 +374,99 @@ public class PgnReader {
         return fileInt - 97; // converts file letter to a column for 2d array
     }
 
+    /**
+     * Classifies a SAN move into one of the move types understood by the
+     * `char[][]` version of `performMove`.
+     *
+     * @param move the move in SAN
+     * @return the move type, or -1 if it is not recognized, which is
+     *     counted as a `PgnMetrics` fallback
+     */
     public static int determineMoveType(String move) {
-        boolean containsEquals = move.contains("="); // for pawn promotions
-        boolean containsX = move.contains("x");
-        // getting rid of x, !, ?, +, #, and e.p. to simplify moves
-        move = move.replace("x", "");
-        move = move.replace("!", "");
-        move = move.replace("?", "");
-        move = move.replace("+", "");
-        move = move.replace("#", "");
-        move = move.replace("e.p.", "");
-        int length = move.length();
-        String piece = move.substring(0, 1);
-        if (length == 2 || ((containsEquals && !containsX))) {
-            return 0; // pawn move forward
-        } else if (length == 3 && piece.equals("R")) {
-            return 1; // rook move
-        } else if ((length >= 3 && !(isUpperCase(piece)))) {
-            return 2; // pawn capture move
-        } else if (length == 3 && piece.equals("B")) {
-            return 3; // bishop move
-        } else if (length == 3 && piece.equals("K")) {
-            return 4; // king move
-        } else if (length == 3 && piece.equals("Q")) {
-            return 5; // queen move
-        } else if (length == 3 && piece.equals("N")) {
-            return 6; // knight move
-        } else if (length == 3 && move.equals("O-O")) {
-            return 7; // king-side castle
-        } else if (length == 5 && move.equals("O-O-O")) {
-            return 8; // queen-side castle
-        } else if (length == 4 && piece.equals("R")) {
-            return 9; // disambiguating rook move (rank or file)
-        } else if (length == 4 && piece.equals("N")) {
-            return 10; // disambiguating knight move (rank or file)
-        } else if (length == 4 && piece.equals("Q")) {
-            return 11; // disambiguating queen move (rank or file)
-        } else if (length == 4 && piece.equals("B")) {
-            return 12; // disambiguating bishop move (rank or file)
-        } else if (length == 5 && piece.equals("N")) {
-            return 13; // disambiguating knight move (rank and file)
-        } else if (length == 5 && piece.equals("Q")) {
-            return 14; // disambiguating queen move (rank and file)
-        } else if (length == 5 && piece.equals("B")) {
-            return 15; // disambiguating bishop move (rank and file)
-        } else {
-            System.out.println("THIS SHOULDN'T HAPPEN");
-            return -1;
+        int moveType = SanDecoder.legacyMoveType(SanDecoder.decode(move));
+        PgnMetrics.moveType(moveType);
+        if (moveType == -1) {
+            PgnMetrics.fallback();
         }
+        return moveType;
+    }
+
+    /**
+     * Plays a move decoded by `SanDecoder` on a bitboard position. An
+     * `INVALID` move is skipped and counted as a `PgnMetrics` fallback;
+     * `finalPosition(String, Bitboard, long, PgnError.Handler)` reports
+     * such moves instead.
+     *
+     * @param move the packed move
+     * @param color 0 for white, 1 for black
+     * @param board the position to update
+     * @return board, after the move
+     */
+    public static Bitboard performMove(int move, int color, Bitboard board) {
+        if (!board.apply(move, color)) {
+            PgnMetrics.fallback();
+        }
+        return board;
+    }
+
+    /**
+     * Plays a move of the given type on a bitboard position. This is the
+     * same as the `char[][]` version, but origin squares are found with
+     * attack lookups instead of scanning the board.
+     *
+     * @param moveType the move type returned by `determineMoveType`
+     * @param color 0 for white, 1 for black
+     * @param move the move in SAN
+     * @param board the position to update
+     * @return board, after the move
+     */
+    public static Bitboard performMove(int moveType, int color, String move,
+        Bitboard board) {
+        if (moveType == -1) {
+            PgnMetrics.fallback();
+            return board;
+        }
+        return performMove(SanDecoder.decode(move), color, board);
+    }
+
+    // getting rid of x, !, ?, +, #, and e.p. to simplify moves; returns
+    // move itself, without copying, when there is nothing to remove
+    private static String simplifyMove(String move) {
+        StringBuilder sb = null;
+        int i = 0;
+        while (i < move.length()) {
+            char c = move.charAt(i);
+            int skip = 0;
+            if (move.startsWith("e.p.", i)) {
+                skip = 4;
+            } else if (c == 'x' || c == '!' || c == '?' || c == '+'
+                || c == '#') {
+                skip = 1;
+            }
+            if (skip > 0 && sb == null) {
+                sb = new StringBuilder(move.length());
+                sb.append(move, 0, i);
+            } else if (skip == 0 && sb != null) {
+                sb.append(c);
+            }
+            i += Math.max(skip, 1);
+        }
+        return sb == null ? move : sb.toString();
     }
 
     public static char[][] performMove(int moveType, int color, String move,
         char[][] board) {
-        move = move.replace("x", "");
-        move = move.replace("!", "");
-        move = move.replace("?", "");
-        move = move.replace("+", "");
-        move = move.replace("#", "");
-        move = move.replace("e.p.", "");
+        try {
+            return moveOnBoard(moveType, color, simplifyMove(move), board);
+        } catch (RuntimeException e) {
+            // a move too malformed for the movers to parse, such as "Nb"
+            PgnMetrics.fallback();
+            return board;
+        }
+    }
+
+    private static char[][] moveOnBoard(int moveType, int color, String move,
+        char[][] board) {
         if (moveType == 0 && color == 0) { // white pawn move forward
             board = whitePawnMove(move, board);
         } else if (moveType == 0 && color == 1) { // black pawn move forward
@@ -276,8 +532,7 @@ public class PgnReader {
         } else if (moveType == 15 && color == 1) { // black bishop 2 disambig
             board = doubleDisamMove(move, board, 'b');
         } else {
-            System.out.println("THIS SHOULDN'T HAPPEN");
-            board = board;
+            PgnMetrics.fallback();
         }
         return board;
     }
@@ -491,34 +746,34 @@ public class PgnReader {
 
     public static char[][] knightMove(String move, char[][] board,
         char knight) {
-        int column = getCol(move.substring(1, 2).charAt(0));
-        int row = getRow(Integer.parseInt(move.substring(2, 3)));
-        int count = 0; // so the loop exits once the correct N is found
-        String origCol1 = "", origRow1 = "";
-        int origCol = -1, origRow = -1;
-        String[] knightOrigins = possibleKnightOrigins(column, row);
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                if (board[i][j] == knight && count == 0) {
-                    for (int x = 0; x < knightOrigins.length; x++) {
-                        if (knightOrigins[x] != null) {
-                            origCol1 = knightOrigins[x].substring(0, 1);
-                            origCol = Integer.parseInt(origCol1);
-                            origRow1 = knightOrigins[x].substring(1, 2);
-                            origRow = Integer.parseInt(origRow1);
-                            if (i == origRow && j == origCol) {
-                                board[i][j] = ' ';
-                                count++;
-                            }
-                        }
-                    }
-                }
-            }
+        int column = getCol(move.charAt(1));
+        int row = getRow(move.charAt(2) - '0');
+        int origin = findKnight(KNIGHT_ORIGINS[row * 8 + column], -1, -1,
+            knight, board);
+        if (origin >= 0) {
+            board[origin >> 3][origin & 7] = ' ';
         }
         board[row][column] = knight;
         return board;
     }
 
+    /**
+     * Returns the first of origins that holds knight and lies in origCol
+     * and origRow (either may be -1 for any), or -1 if there is none.
+     */
+    private static int findKnight(int[] origins, int origCol, int origRow,
+        char knight, char[][] board) {
+        for (int sq : origins) {
+            int i = sq >> 3;
+            int j = sq & 7;
+            if (board[i][j] == knight && (origCol < 0 || j == origCol)
+                && (origRow < 0 || i == origRow)) {
+                return sq;
+            }
+        }
+        return -1;
+    }
+
     public static char[][] queenMove(String move, char[][] board, char queen) {
         int column = getCol(move.substring(1, 2).charAt(0));
         int row = getRow(Integer.parseInt(move.substring(2, 3)));
@@ -695,44 +950,11 @@ public class PgnReader {
 
     public static char[][] singleKnightDisambig(int origCol, int origRow,
         int endCol, int endRow, char knight, char[][] board) {
-        int count = 0;
-        String[] knightOrigins = possibleKnightOrigins(endCol, endRow);
-        if (origCol >= 0) { // check if disambiguating by file or rank
-            String tmpOrigRow1 = "";
-            int tmpOrigRow = -1;
-            for (int i = 0; i < board.length; i++) {
-                if (board[i][origCol] == knight && count == 0) {
-                    for (int x = 0; x < knightOrigins.length; x++) {
-                        if (knightOrigins[x] != null) {
-                            tmpOrigRow1 = knightOrigins[x].substring(1, 2);
-                            tmpOrigRow = Integer.parseInt(tmpOrigRow1);
-                            if (i == tmpOrigRow) {
-                                board[i][origCol] = ' ';
-                                count++;
-                            }
-                        }
-                    }
-                }
-            }
-        } else {
-            String tmpOrigCol1 = "";
-            int tmpOrigCol = -1;
-            for (int j = 0; j < board[origRow].length; j++) {
-                if (board[origRow][j] == knight && count == 0) {
-                    for (int x = 0; x < knightOrigins.length; x++) {
-                        if (knightOrigins[x] != null) {
-                            tmpOrigCol1 = knightOrigins[x].substring(0, 1);
-                            tmpOrigCol = Integer.parseInt(tmpOrigCol1);
-                            if (j == tmpOrigCol) {
-                                board[origRow][j] = ' ';
-                                count++;
-                            }
-                        }
-                    }
-                }
-            }
+        int origin = findKnight(KNIGHT_ORIGINS[endRow * 8 + endCol], origCol,
+            origRow, knight, board);
+        if (origin >= 0) {
+            board[origin >> 3][origin & 7] = ' ';
         }
-
         board[endRow][endCol] = knight;
         return board;
     }
@@ -821,43 +1043,87 @@ public class PgnReader {
         return board;
     }
 
+    /**
+     * Returns the piece placement field of the FEN for a bitboard position.
+     * Use `FenWriter` for the full FEN.
+     */
+    public static String getFEN(Bitboard board) {
+        return FenWriter.appendPlacement(board, new StringBuilder(72))
+            .toString();
+    }
+
     public static String getFEN(char[][] board) {
         int emptySquareCounter = 0;
-        String fenString = "";
+        StringBuilder fenString = new StringBuilder(72);
         for (int i = 0; i < board.length; i++) {
             for (int j = 0; j < board[i].length; j++) {
                 if (board[i][j] == ' ') {
                     emptySquareCounter++;
                 } else if (emptySquareCounter > 0 && board[i][j] != ' ') {
-                    fenString += emptySquareCounter;
+                    fenString.append(emptySquareCounter);
                     emptySquareCounter = 0;
-                    fenString += board[i][j];
+                    fenString.append(board[i][j]);
                 } else {
-                    fenString += board[i][j];
+                    fenString.append(board[i][j]);
                 }
             }
             if (emptySquareCounter > 0) {
-                fenString += emptySquareCounter;
+                fenString.append(emptySquareCounter);
             }
             if (i != (board.length - 1)) {
-                fenString += "/";
+                fenString.append('/');
             }
             emptySquareCounter = 0;
         }
-        return fenString;
+        return fenString.toString();
     }
 
+    /**
+     * Prints the tags of the Seven Tag Roster and the final position of
+     * every game in the files named on the command line, or runs
+     * `BatchCommand` if the first argument is "batch" and `TreeCommand` if
+     * it is "tree". Games with a move that cannot be played are skipped
+     * and reported on standard error.
+     */
     public static void main(String[] args) {
-        String game = fileContent(args[0]);
-        System.out.format("Event: %s%n", tagValue("Event", game));
-        System.out.format("Site: %s%n", tagValue("Site", game));
-        System.out.format("Date: %s%n", tagValue("Date", game));
-        System.out.format("Round: %s%n", tagValue("Round", game));
-        System.out.format("White: %s%n", tagValue("White", game));
-        System.out.format("Black: %s%n", tagValue("Black", game));
-        System.out.format("Result: %s%n", tagValue("Result", game));
-        System.out.println("Final Position:");
-        System.out.println(finalPosition(game));
-        System.out.println();
-    }
-}
\ No newline at end of file
+        if (args.length > 0 && args[0].equals("batch")) {
+            BatchCommand.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("tree")) {
+            TreeCommand.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            files.add(Paths.get(arg));
+        }
+        // buffered, unlike System.out, which flushes on every line
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+            new OutputStreamWriter(System.out), 1 << 16));
+        try {
+            new IngestPipeline().run(files,
+                game -> printGame(game.header, game.fen, out),
+                error -> System.err.println(error));
+        } catch (IOException e) {
+            out.flush();
+            System.err.format("IOException: %s%n", e);
+            System.exit(1);
+        }
+        out.flush();
+    }
+
+    private static void printGame(PgnHeader header, String fen,
+        PrintWriter out) {
+        out.format("Event: %s%n", tagValue("Event", header));
+        out.format("Site: %s%n", tagValue("Site", header));
+        out.format("Date: %s%n", tagValue("Date", header));
+        out.format("Round: %s%n", tagValue("Round", header));
+        out.format("White: %s%n", tagValue("White", header));
+        out.format("Black: %s%n", tagValue("Black", header));
+        out.format("Result: %s%n", tagValue("Result", header));
+        out.println("Final Position:");
+        out.println(fen);
+        out.println();
+    }
+}
@@ -0,0 +1,421 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An on-disk index from Zobrist position hashes to the byte offsets of the
+ * games that reached each position, so that finding every game with a
+ * given position is a binary search instead of a replay of the database.
+ *
+ * The file holds a header followed by (hash, game offset) pairs as
+ * big-endian longs, sorted by hash and then by offset. It is memory-mapped
+ * for lookups. The starting position is not indexed, and neither is any
+ * position after the first illegal move of a game.
+ */
+public class PositionIndex {
+
+    // version 2: en passant only hashed when a capture is possible
+    private static final long MAGIC = 0x5047_4E49_4458_0002L; // "PGNIDX" 2
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 16;
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+    private static final int RUN_ENTRIES = 1 << 22; // 64 MiB at most
+
+    private final MappedByteBuffer[] segments;
+    private final long count;
+
+    /**
+     * Opens an index file written by `build`.
+     */
+    public PositionIndex(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile,
+            StandardOpenOption.READ)) {
+            long size = channel.size();
+            int n = (int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS);
+            segments = new MappedByteBuffer[n];
+            for (int i = 0; i < n; i++) {
+                long start = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(size - start, SEGMENT_MASK + 1));
+            }
+            if (size < HEADER_BYTES || getLong(0) != MAGIC) {
+                throw new IOException("not a position index: " + indexFile);
+            }
+            count = getLong(8);
+        }
+    }
+
+    /**
+     * Returns the number of (position, game) entries in the index.
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Returns the byte offsets, in ascending order, of the games in the
+     * indexed PGN file that reached the position with the given hash.
+     */
+    public long[] gamesWith(long hash) {
+        long lo = 0;
+        long hi = count;
+        while (lo < hi) { // first entry whose hash is not below hash
+            long mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(hashAt(mid), hash) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        long end = lo;
+        while (end < count && hashAt(end) == hash) {
+            end++;
+        }
+        long[] games = new long[(int) (end - lo)];
+        for (int i = 0; i < games.length; i++) {
+            games[i] = getLong(HEADER_BYTES + (lo + i) * ENTRY_BYTES + 8);
+        }
+        return games;
+    }
+
+    private long hashAt(long entry) {
+        return getLong(HEADER_BYTES + entry * ENTRY_BYTES);
+    }
+
+    private long getLong(long offset) {
+        // entries are 8-byte aligned, so a long never spans two segments
+        return segments[(int) (offset >>> SEGMENT_BITS)]
+            .getLong((int) (offset & SEGMENT_MASK));
+    }
+
+    /**
+     * Replays every game in a PGN file and writes an index of the
+     * positions they reach to indexFile.
+     *
+     * Entries are collected in memory up to a fixed number, sorted and
+     * spilled to a temporary file next to indexFile as a sorted run; the
+     * runs are then merged into the index. The heap needed is the same
+     * for any size of database, and the index is not limited to 2^31
+     * entries.
+     *
+     * @param pgnFile the PGN file to index
+     * @param indexFile where to write the index
+     * @return the number of entries written
+     */
+    public static long build(Path pgnFile, Path indexFile)
+        throws IOException {
+        return build(pgnFile, indexFile, RUN_ENTRIES);
+    }
+
+    static long build(Path pgnFile, Path indexFile, int runEntries)
+        throws IOException {
+        MappedPgnScanner scanner = new MappedPgnScanner(pgnFile);
+        Path dir = indexFile.toAbsolutePath().getParent();
+        Builder builder = new Builder(scanner, runEntries, dir);
+        try {
+            scanner.scan(builder);
+            if (builder.failure != null) {
+                throw builder.failure;
+            }
+            if (builder.runs.isEmpty()) {
+                // small enough to sort in memory and write directly
+                int n = builder.sortAndDedupe();
+                try (DataOutputStream out = output(indexFile)) {
+                    out.writeLong(MAGIC);
+                    out.writeLong(n);
+                    for (int i = 0; i < n; i++) {
+                        out.writeLong(builder.hashes[i]);
+                        out.writeLong(builder.games[i]);
+                    }
+                }
+                return n;
+            }
+            builder.spill();
+            return merge(builder.runs, indexFile);
+        } finally {
+            for (Path run : builder.runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    private static DataOutputStream output(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+            Files.newOutputStream(file), 1 << 16));
+    }
+
+    /**
+     * Merges sorted runs into an index file, dropping entries repeated in
+     * more than one run, and returns the number of entries written.
+     */
+    private static long merge(List<Path> runs, Path indexFile)
+        throws IOException {
+        Run[] heap = new Run[runs.size()];
+        int size = 0;
+        long n = 0;
+        try {
+            for (Path path : runs) {
+                Run run = new Run(path);
+                if (run.next()) {
+                    heap[size++] = run;
+                    siftUp(heap, size - 1);
+                } else {
+                    run.close();
+                }
+            }
+            try (DataOutputStream out = output(indexFile)) {
+                out.writeLong(MAGIC);
+                out.writeLong(0); // the count, filled in below
+                long lastHash = 0;
+                long lastGame = -1;
+                while (size > 0) {
+                    Run run = heap[0];
+                    if (run.hash != lastHash || run.game != lastGame) {
+                        out.writeLong(run.hash);
+                        out.writeLong(run.game);
+                        lastHash = run.hash;
+                        lastGame = run.game;
+                        n++;
+                    }
+                    if (!run.next()) {
+                        run.close();
+                        heap[0] = heap[--size];
+                        heap[size] = null;
+                    }
+                    siftDown(heap, size);
+                }
+            }
+        } finally {
+            for (int i = 0; i < size; i++) {
+                heap[i].close();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(indexFile,
+            StandardOpenOption.WRITE)) {
+            ByteBuffer count = ByteBuffer.allocate(8).putLong(0, n);
+            channel.write(count, 8);
+        }
+        return n;
+    }
+
+    private static void siftUp(Run[] heap, int i) {
+        while (i > 0 && heap[i].compareTo(heap[(i - 1) / 2]) < 0) {
+            Run t = heap[i];
+            heap[i] = heap[(i - 1) / 2];
+            heap[(i - 1) / 2] = t;
+            i = (i - 1) / 2;
+        }
+    }
+
+    private static void siftDown(Run[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int least = i;
+            for (int c = 2 * i + 1; c <= 2 * i + 2 && c < size; c++) {
+                if (heap[c].compareTo(heap[least]) < 0) {
+                    least = c;
+                }
+            }
+            if (least == i) {
+                return;
+            }
+            Run t = heap[i];
+            heap[i] = heap[least];
+            heap[least] = t;
+            i = least;
+        }
+    }
+
+    /**
+     * Reads a sorted run of (hash, game) pairs back one entry at a time.
+     */
+    private static class Run implements Closeable {
+        final DataInputStream in;
+        long remaining;
+        long hash;
+        long game;
+
+        Run(Path path) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(path), 1 << 16));
+            remaining = Files.size(path) / ENTRY_BYTES;
+        }
+
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            hash = in.readLong();
+            game = in.readLong();
+            return true;
+        }
+
+        int compareTo(Run other) {
+            int c = Long.compareUnsigned(hash, other.hash);
+            return c != 0 ? c : Long.compare(game, other.game);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static class Builder implements MappedPgnScanner.Handler {
+        final MappedPgnScanner scanner;
+        final byte[] token = new byte[32];
+        final Bitboard board = new Bitboard();
+        final Path dir;
+        final List<Path> runs = new ArrayList<>();
+        final int runEntries;
+        long game;
+        boolean stopped; // an illegal move ended the current game
+        long[] hashes;
+        long[] games;
+        int size = 0;
+        IOException failure;
+
+        Builder(MappedPgnScanner scanner, int runEntries, Path dir) {
+            this.scanner = scanner;
+            this.runEntries = runEntries;
+            this.dir = dir;
+            int n = Math.min(1 << 16, runEntries);
+            hashes = new long[n];
+            games = new long[n];
+        }
+
+        @Override
+        public void gameStart(long offset) {
+            board.reset();
+            game = offset;
+            stopped = false;
+        }
+
+        @Override
+        public void move(long offset, int length) {
+            if (stopped) {
+                return;
+            }
+            int n = scanner.copy(offset, length, token, 0);
+            int move = SanDecoder.decode(token, 0, n);
+            if (board.tryApply(move, board.sideToMove())) {
+                add(board.hash(), game);
+            } else {
+                stopped = true; // the positions after it would be wrong
+            }
+        }
+
+        void add(long hash, long offset) {
+            if (size == hashes.length && size < runEntries) {
+                int n = (int) Math.min(2L * size, runEntries);
+                hashes = Arrays.copyOf(hashes, n);
+                games = Arrays.copyOf(games, n);
+            } else if (size == hashes.length) {
+                if (failure != null) {
+                    return;
+                }
+                try {
+                    spill();
+                } catch (IOException e) {
+                    failure = e;
+                    return;
+                }
+            }
+            hashes[size] = hash;
+            games[size] = offset;
+            size++;
+        }
+
+        /**
+         * Sorts the entries in memory and writes them to a new run file.
+         */
+        void spill() throws IOException {
+            int n = sortAndDedupe();
+            Path run = Files.createTempFile(dir, "pgnidx", ".run");
+            runs.add(run);
+            try (DataOutputStream out = output(run)) {
+                for (int i = 0; i < n; i++) {
+                    out.writeLong(hashes[i]);
+                    out.writeLong(games[i]);
+                }
+            }
+            size = 0;
+        }
+
+        /**
+         * Sorts the entries by hash and then offset, drops repeats of the
+         * same position within a game and returns the new size.
+         */
+        int sortAndDedupe() {
+            sort(0, size - 1);
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (n == 0 || hashes[i] != hashes[n - 1]
+                    || games[i] != games[n - 1]) {
+                    hashes[n] = hashes[i];
+                    games[n] = games[i];
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        // quicksort over the two parallel arrays, so nothing gets boxed
+        private void sort(int lo, int hi) {
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                long pivotHash = hashes[mid];
+                long pivotGame = games[mid];
+                int i = lo;
+                int j = hi;
+                while (i <= j) {
+                    while (compare(i, pivotHash, pivotGame) < 0) {
+                        i++;
+                    }
+                    while (compare(j, pivotHash, pivotGame) > 0) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+                // recurse into the smaller half to bound the stack depth
+                if (j - lo < hi - i) {
+                    sort(lo, j);
+                    lo = i;
+                } else {
+                    sort(i, hi);
+                    hi = j;
+                }
+            }
+        }
+
+        private int compare(int i, long hash, long offset) {
+            int c = Long.compareUnsigned(hashes[i], hash);
+            return c != 0 ? c : Long.compare(games[i], offset);
+        }
+
+        private void swap(int i, int j) {
+            long h = hashes[i];
+            hashes[i] = hashes[j];
+            hashes[j] = h;
+            long g = games[i];
+            games[i] = games[j];
+            games[j] = g;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Called by `PgnReader.replay` after each move of a game, so that every
+ * intermediate position can be examined in one pass over the game.
+ */
+public interface PositionVisitor {
+
+    /**
+     * @param ply the number of half-moves played so far, starting at 1
+     * @param game the text of the game being replayed
+     * @param start the offset in game of the move as it appears in the
+     *     movetext
+     * @param end the offset in game just past the move
+     * @param move the move decoded by `SanDecoder`
+     * @param board the position after the move; it is only valid until
+     *     this method returns, so copy out anything you want to keep
+     */
+    void visit(int ply, CharSequence game, int start, int end, int move,
+        BoardView board);
+}
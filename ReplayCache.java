@@ -0,0 +1,171 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded cache of positions reached by the opening moves of
+ * replayed games, so that games sharing an opening do not all replay it
+ * from the starting position. See `PgnReader.finalPosition(String,
+ * Bitboard, ReplayCache)`.
+ *
+ * A position is stored under two independent 64-bit hashes of the moves
+ * that led to it, a key and a check word, every `STEP` half-moves up to
+ * `maxPly`, where sharing is likely. The cache is a fixed array of longs,
+ * six per position: the key, the check word and the position as written
+ * by `Bitboard.pack`, so nothing is boxed or copied as an object.
+ *
+ * The cache is direct-mapped rather than LRU: each key has one slot, and
+ * a position stored in a taken slot evicts the one there, however
+ * recently that was used. Common openings are put again by the next game
+ * that misses them, so they win their slots back, and nothing has to be
+ * tracked per lookup. A position is only returned if both its key and
+ * its check word match, so for a different move sequence to be taken
+ * for a cached one, two unrelated 128-bit hashes would have to collide.
+ *
+ * The slots are split into stripes with a lock each, so threads sharing
+ * the cache rarely wait for each other.
+ */
+public class ReplayCache {
+
+    /** The number of half-moves between cached positions of a game. */
+    public static final int STEP = 4;
+
+    private static final int STRIPE_BITS = 6;
+    // the key, the check word, then the position
+    private static final int ENTRY_LONGS = 6;
+
+    // a slot is free while its key is 0, which no move sequence hashes to
+    private final long[][] stripes = new long[1 << STRIPE_BITS][];
+    private final int slotMask;
+    private final int maxPly;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * @param capacity the most positions to keep, rounded up to a power
+     *     of two of at least 64
+     * @param maxPly how many half-moves into each game to cache
+     */
+    public ReplayCache(int capacity, int maxPly) {
+        int slots = Math.max(1, Integer.highestOneBit(
+            Math.max(capacity - 1, 1) >>> STRIPE_BITS) << 1);
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new long[slots * ENTRY_LONGS];
+        }
+        this.slotMask = slots - 1;
+        this.maxPly = maxPly;
+    }
+
+    /**
+     * Returns the key of the move sequence prefix followed by move, a
+     * move decoded by `SanDecoder`. The empty sequence hashes to 0.
+     */
+    public static long extend(long prefix, int move) {
+        long h = prefix * 0x9E3779B97F4A7C15L + SanDecoder.withoutCheck(move);
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Returns the check word of the move sequence whose check word is
+     * check followed by move, like `extend` but with unrelated constants.
+     */
+    public static long extendCheck(long check, int move) {
+        long h = check * 0xC2B2AE3D27D4EB4FL + SanDecoder.withoutCheck(move)
+            + 0x165667B19E3779F9L;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    public int maxPly() {
+        return maxPly;
+    }
+
+    /**
+     * Sets board to the position after the moves with the given key and
+     * check word, if it is cached.
+     *
+     * @return whether it was
+     */
+    public boolean get(long prefix, long check, Bitboard board) {
+        long[] stripe = stripe(prefix);
+        int entry = entry(prefix);
+        synchronized (stripe) {
+            if (prefix == 0 || stripe[entry] != prefix
+                || stripe[entry + 1] != check) {
+                return false;
+            }
+            board.unpack(stripe, entry + 2);
+            return true;
+        }
+    }
+
+    /**
+     * Stores board as the position after the moves with the given key and
+     * check word, evicting whatever position had the same slot.
+     */
+    public void put(long prefix, long check, Bitboard board) {
+        if (prefix == 0) {
+            return;
+        }
+        long[] stripe = stripe(prefix);
+        int entry = entry(prefix);
+        synchronized (stripe) {
+            long old = stripe[entry];
+            if ((old == prefix && stripe[entry + 1] == check)
+                || !board.pack(stripe, entry + 2)) {
+                return;
+            }
+            stripe[entry] = prefix;
+            stripe[entry + 1] = check;
+            if (old == 0) {
+                size.increment();
+            } else {
+                evictions.increment();
+            }
+        }
+    }
+
+    private long[] stripe(long prefix) {
+        return stripes[(int) (prefix >>> (64 - STRIPE_BITS))];
+    }
+
+    private int entry(long prefix) {
+        return ((int) prefix & slotMask) * ENTRY_LONGS;
+    }
+
+    /**
+     * Counts one replay as a hit if it could start from a cached position
+     * and as a miss if it had to start from the beginning.
+     */
+    void record(boolean hit) {
+        (hit ? hits : misses).increment();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        return size.intValue();
+    }
+
+    @Override
+    public String toString() {
+        long h = hits();
+        long total = h + misses();
+        return String.format("%d positions, %d hits, %d misses (%.1f%%),"
+            + " %d evictions", size(), h, total - h,
+            total == 0 ? 0.0 : 100.0 * h / total, evictions());
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ * Decodes a SAN move in a single pass into a packed `int`, without
+ * creating any intermediate strings.
+ *
+ * Layout of a decoded move, from the lowest bit up:
+ * <pre>
+ *  0-5   destination square (row * 8 + column, as in Bitboard)
+ *  6-9   origin column + 1, or 0 when not given
+ * 10-13  origin row + 1, or 0 when not given
+ * 14-16  piece type (Bitboard.PAWN to Bitboard.KING)
+ * 17-19  promotion piece type, or 0
+ * 20     capture
+ * 21     check
+ * 22     checkmate
+ * 23     king-side castle
+ * 24     queen-side castle
+ * </pre>
+ * Annotations such as !, ? and e.p. are accepted and ignored. Anything that
+ * is not a move decodes to `INVALID`.
+ */
+public class SanDecoder {
+
+    public static final int INVALID = -1;
+
+    private static final int FROM_COL_SHIFT = 6;
+    private static final int FROM_ROW_SHIFT = 10;
+    private static final int PIECE_SHIFT = 14;
+    private static final int PROMOTION_SHIFT = 17;
+    private static final int CAPTURE = 1 << 20;
+    private static final int CHECK = 1 << 21;
+    private static final int MATE = 1 << 22;
+    private static final int KING_SIDE_CASTLE = 1 << 23;
+    private static final int QUEEN_SIDE_CASTLE = 1 << 24;
+
+    // legacy move types by piece type for 0, 1 and 2 origin hints
+    private static final int[] PLAIN_TYPES = {-1, 6, 3, 1, 5, 4};
+    private static final int[] SINGLE_HINT_TYPES = {-1, 10, 12, 9, 11, -1};
+    private static final int[] DOUBLE_HINT_TYPES = {-1, 13, 15, -1, 14, -1};
+
+    public static int decode(CharSequence move) {
+        return decode(move, null, 0, move.length());
+    }
+
+    public static int decode(CharSequence move, int start, int end) {
+        return decode(move, null, start, end);
+    }
+
+    public static int decode(byte[] move, int start, int end) {
+        return decode(null, move, start, end);
+    }
+
+    private static int decode(CharSequence chars, byte[] bytes, int start,
+        int end) {
+        if (start >= end) {
+            return INVALID;
+        }
+        int flags = 0;
+        char first = charAt(chars, bytes, start);
+        if (first == 'O' || first == '0') {
+            return decodeCastle(chars, bytes, start, end);
+        }
+        int piece = letterType(first);
+        if (piece < 0) {
+            return INVALID;
+        }
+        int i = piece > Bitboard.PAWN ? start + 1 : start;
+        int lastCol = -1, lastRow = -1, prevCol = -1, prevRow = -1;
+        int promotion = 0;
+        for (; i < end; i++) {
+            char c = charAt(chars, bytes, i);
+            if (c >= 'a' && c <= 'h') {
+                if (c == 'e' && i + 1 < end
+                    && charAt(chars, bytes, i + 1) == '.') {
+                    break; // e.p.
+                }
+                prevCol = lastCol;
+                lastCol = c - 'a';
+            } else if (c >= '1' && c <= '8') {
+                prevRow = lastRow;
+                lastRow = '8' - c;
+            } else if (c == 'x' || c == ':') {
+                flags |= CAPTURE;
+            } else if (c == '+') {
+                flags |= CHECK;
+            } else if (c == '#') {
+                flags |= CHECK | MATE;
+            } else if (c == '=' || (c >= 'B' && c <= 'R')) {
+                if (c == '=') {
+                    i++;
+                    c = i < end ? charAt(chars, bytes, i) : ' ';
+                }
+                promotion = letterType(c);
+                if (piece != Bitboard.PAWN || promotion <= Bitboard.PAWN
+                    || promotion == Bitboard.KING) {
+                    return INVALID;
+                }
+            } else if (c != '!' && c != '?' && c != '-') {
+                return INVALID;
+            }
+        }
+        if (lastCol < 0 || lastRow < 0) {
+            return INVALID;
+        }
+        // when a column or row appears twice, the first one is the origin
+        return (lastRow * 8 + lastCol) | ((prevCol + 1) << FROM_COL_SHIFT)
+            | ((prevRow + 1) << FROM_ROW_SHIFT) | (piece << PIECE_SHIFT)
+            | (promotion << PROMOTION_SHIFT) | flags;
+    }
+
+    private static int decodeCastle(CharSequence chars, byte[] bytes,
+        int start, int end) {
+        int letters = 0;
+        int flags = 0;
+        for (int i = start; i < end; i++) {
+            char c = charAt(chars, bytes, i);
+            if (c == 'O' || c == '0') {
+                letters++;
+            } else if (c == '+') {
+                flags |= CHECK;
+            } else if (c == '#') {
+                flags |= CHECK | MATE;
+            } else if (c != '-' && c != '!' && c != '?') {
+                return INVALID;
+            }
+        }
+        if (letters == 2) {
+            return KING_SIDE_CASTLE | (Bitboard.KING << PIECE_SHIFT) | flags;
+        } else if (letters == 3) {
+            return QUEEN_SIDE_CASTLE | (Bitboard.KING << PIECE_SHIFT) | flags;
+        }
+        return INVALID;
+    }
+
+    private static char charAt(CharSequence chars, byte[] bytes, int i) {
+        return chars != null ? chars.charAt(i) : (char) (bytes[i] & 0xFF);
+    }
+
+    /**
+     * Returns the piece type for a SAN piece letter, `Bitboard.PAWN` for a
+     * file letter, or -1 for anything else.
+     */
+    private static int letterType(char c) {
+        switch (c) {
+            case 'N':
+                return Bitboard.KNIGHT;
+            case 'B':
+                return Bitboard.BISHOP;
+            case 'R':
+                return Bitboard.ROOK;
+            case 'Q':
+                return Bitboard.QUEEN;
+            case 'K':
+                return Bitboard.KING;
+            default:
+                return (c >= 'a' && c <= 'h') ? Bitboard.PAWN : -1;
+        }
+    }
+
+    public static int to(int move) {
+        return move & 63;
+    }
+
+    /**
+     * Returns the origin column given in the move, or -1.
+     */
+    public static int fromCol(int move) {
+        return ((move >>> FROM_COL_SHIFT) & 15) - 1;
+    }
+
+    /**
+     * Returns the origin row given in the move, or -1.
+     */
+    public static int fromRow(int move) {
+        return ((move >>> FROM_ROW_SHIFT) & 15) - 1;
+    }
+
+    public static int pieceType(int move) {
+        return (move >>> PIECE_SHIFT) & 7;
+    }
+
+    /**
+     * Returns the promotion piece type, or 0 if the move is no promotion.
+     */
+    public static int promotion(int move) {
+        return (move >>> PROMOTION_SHIFT) & 7;
+    }
+
+    public static boolean isCapture(int move) {
+        return (move & CAPTURE) != 0;
+    }
+
+    public static boolean isCheck(int move) {
+        return (move & CHECK) != 0;
+    }
+
+    public static boolean isMate(int move) {
+        return (move & MATE) != 0;
+    }
+
+    public static boolean isCastle(int move) {
+        return (move & (KING_SIDE_CASTLE | QUEEN_SIDE_CASTLE)) != 0;
+    }
+
+    public static boolean isKingSideCastle(int move) {
+        return (move & KING_SIDE_CASTLE) != 0;
+    }
+
+    /**
+     * Returns move with its check and checkmate flags cleared, so the same
+     * move compares equal however it was annotated.
+     */
+    public static int withoutCheck(int move) {
+        return move == INVALID ? INVALID : move & ~(CHECK | MATE);
+    }
+
+    /**
+     * Maps a decoded move to the move type numbers used by
+     * `PgnReader.determineMoveType`, or -1 where that scheme has none.
+     */
+    public static int legacyMoveType(int move) {
+        if (move == INVALID) {
+            return -1;
+        }
+        if (isCastle(move)) {
+            return isKingSideCastle(move) ? 7 : 8;
+        }
+        int piece = pieceType(move);
+        int hints = (fromCol(move) >= 0 ? 1 : 0)
+            + (fromRow(move) >= 0 ? 1 : 0);
+        if (piece == Bitboard.PAWN) {
+            return (isCapture(move) || fromCol(move) >= 0) ? 2 : 0;
+        } else if (hints == 0) {
+            return PLAIN_TYPES[piece];
+        } else if (hints == 1) {
+            return SINGLE_HINT_TYPES[piece];
+        } else {
+            return DOUBLE_HINT_TYPES[piece];
+        }
+    }
+}
@@ -0,0 +1,112 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds an `OpeningTree` from a set of PGN files and prints the most
+ * played line from the starting position, with the statistics of each
+ * position along it. Run it as `PgnReader tree ...` or directly:
+ *
+ *     java TreeCommand [--plies n] path...
+ *
+ * Paths are expanded as by `BatchCommand.expand`. Only the first n
+ * half-moves of each game are read, 12 unless given.
+ */
+public class TreeCommand {
+
+    private static final int DEFAULT_PLIES = 12;
+
+    private static final String USAGE =
+        "usage: PgnReader tree [--plies n] path...";
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Parses the command line, builds and prints the tree and returns the
+     * exit status: 0 on success, 1 if reading failed and 2 for a bad
+     * command line.
+     */
+    public static int run(String[] args) {
+        int plies = DEFAULT_PLIES;
+        List<String> paths = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--plies")) {
+                    if (++i >= args.length) {
+                        throw new IllegalArgumentException(
+                            "--plies needs a value");
+                    }
+                    plies = Integer.parseInt(args[i]);
+                } else if (args[i].startsWith("--")) {
+                    throw new IllegalArgumentException("unknown option "
+                        + args[i]);
+                } else {
+                    paths.add(args[i]);
+                }
+            }
+            if (plies < 1 || paths.isEmpty()) {
+                throw new IllegalArgumentException(paths.isEmpty()
+                    ? "no input given" : "--plies must be positive");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        OpeningTree tree = new OpeningTree(plies);
+        try {
+            for (String path : paths) {
+                for (Path file : BatchCommand.expand(path)) {
+                    try (PgnGameReader reader = new PgnGameReader(file)) {
+                        reader.forEachRemaining(tree::add);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.format("IOException: %s%n", e);
+            return 1;
+        } catch (UncheckedIOException e) {
+            System.err.format("IOException: %s%n", e.getCause());
+            return 1;
+        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+            new OutputStreamWriter(System.out)));
+        printMainLine(tree, out);
+        out.flush();
+        return 0;
+    }
+
+    /**
+     * Prints the most played move from each position, starting from the
+     * initial one, with how many games played it out of those that
+     * reached the position and how those games ended.
+     */
+    public static void printMainLine(OpeningTree tree, PrintWriter out) {
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        long[] counts = new long[MoveGenerator.MAX_MOVES];
+        Bitboard board = new Bitboard();
+        StringBuilder line = new StringBuilder();
+        for (int ply = 0; ply < tree.maxPly(); ply++) {
+            long hash = board.hash();
+            if (tree.nextMoves(hash, moves, counts) == 0) {
+                break;
+            }
+            line.setLength(0);
+            MoveGenerator.appendSan(board, moves[0], line);
+            out.println(line + "  games " + counts[0] + " of "
+                + tree.games(hash) + "  +"
+                + tree.results(hash, OpeningTree.WHITE_WINS)
+                + " =" + tree.results(hash, OpeningTree.DRAWS) + " -"
+                + tree.results(hash, OpeningTree.BLACK_WINS));
+            board.makeMove(moves[0]);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Random keys for Zobrist hashing of positions. The keys come from a fixed
+ * seed so that hashes stay the same from one run to the next and can be
+ * stored on disk.
+ */
+public class Zobrist {
+
+    static final long[][] PIECE_SQUARE = new long[12][64];
+    static final long[] CASTLING = new long[16];
+    static final long[] EN_PASSANT_FILE = new long[8];
+    static final long BLACK_TO_MOVE;
+
+    static {
+        long seed = 0x5EED_C0FF_EE15_600DL;
+        for (int piece = 0; piece < 12; piece++) {
+            for (int sq = 0; sq < 64; sq++) {
+                seed = next(seed);
+                PIECE_SQUARE[piece][sq] = mix(seed);
+            }
+        }
+        for (int i = 0; i < CASTLING.length; i++) {
+            seed = next(seed);
+            CASTLING[i] = mix(seed);
+        }
+        for (int i = 0; i < EN_PASSANT_FILE.length; i++) {
+            seed = next(seed);
+            EN_PASSANT_FILE[i] = mix(seed);
+        }
+        seed = next(seed);
+        BLACK_TO_MOVE = mix(seed);
+    }
+
+    /**
+     * Returns the key for an en passant square, or 0 if there is none.
+     */
+    static long enPassant(int epSquare) {
+        return epSquare < 0 ? 0L : EN_PASSANT_FILE[epSquare & 7];
+    }
+
+    // splitmix64
+    private static long next(long seed) {
+        return seed + 0x9E3779B97F4A7C15L;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,67 @@
+package pgnreader.bench;
+
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Iterator;
+
+/**
+ * Handles on the PgnReader API. JMH refuses benchmark classes in the
+ * default package, and classes in a named package cannot import from the
+ * default package, so the library is reached through method handles.
+ * The handles are static finals, which the JIT treats as constants, so a
+ * call through one costs the same as a direct call.
+ *
+ * Library types other than `String` are passed as `Object`.
+ */
+final class Api {
+
+    static final MethodHandle FILE_CONTENT;
+    static final MethodHandle TAG_VALUE;
+    static final MethodHandle DETERMINE_MOVE_TYPE;
+    static final MethodHandle PERFORM_MOVE;
+    static final MethodHandle FINAL_POSITION;
+    static final MethodHandle GET_FEN;
+    static final MethodHandle NEW_BITBOARD;
+    static final MethodHandle NEW_GAME_READER;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> reader = Class.forName("PgnReader");
+            Class<?> bitboard = Class.forName("Bitboard");
+            Class<?> gameReader = Class.forName("PgnGameReader");
+            FILE_CONTENT = lookup.findStatic(reader, "fileContent",
+                MethodType.methodType(String.class, String.class));
+            TAG_VALUE = lookup.findStatic(reader, "tagValue",
+                MethodType.methodType(String.class, String.class,
+                    String.class));
+            DETERMINE_MOVE_TYPE = lookup.findStatic(reader,
+                "determineMoveType",
+                MethodType.methodType(int.class, String.class));
+            PERFORM_MOVE = lookup.findStatic(reader, "performMove",
+                MethodType.methodType(bitboard, int.class, int.class,
+                    String.class, bitboard))
+                .asType(MethodType.methodType(Object.class, int.class,
+                    int.class, String.class, Object.class));
+            FINAL_POSITION = lookup.findStatic(reader, "finalPosition",
+                MethodType.methodType(String.class, String.class));
+            GET_FEN = lookup.findStatic(reader, "getFEN",
+                MethodType.methodType(String.class, bitboard))
+                .asType(MethodType.methodType(String.class, Object.class));
+            NEW_BITBOARD = lookup.findConstructor(bitboard,
+                MethodType.methodType(void.class))
+                .asType(MethodType.methodType(Object.class));
+            NEW_GAME_READER = lookup.findConstructor(gameReader,
+                MethodType.methodType(void.class, InputStream.class))
+                .asType(MethodType.methodType(Iterator.class,
+                    InputStream.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Api() {
+    }
+}
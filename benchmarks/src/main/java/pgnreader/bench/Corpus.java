@@ -0,0 +1,80 @@
+package pgnreader.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * One of the synthetic game collections bundled under /corpus:
+ *
+ * - short: 200 games of 20 to 60 plies
+ * - long: 40 games of 140 to 300 plies
+ * - promotion: 100 games with over 600 promotions between them
+ *
+ * The games are random legal games, so every move type the parser knows
+ * appears, including disambiguated moves and castling.
+ */
+final class Corpus {
+
+    final String name;
+    final Path file;
+    final String[] games;
+    /** The SAN moves of each game, without move numbers or the result. */
+    final String[][] moves;
+
+    Corpus(String name) {
+        this.name = name;
+        String resource = "/corpus/" + name + ".pgn";
+        try {
+            file = Files.createTempFile("corpus-" + name, ".pgn");
+            file.toFile().deleteOnExit();
+            try (InputStream in = open(resource)) {
+                Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            List<String> list = new ArrayList<>();
+            try (InputStream in = open(resource)) {
+                Iterator<?> it = (Iterator<?>) Api.NEW_GAME_READER.invoke(in);
+                while (it.hasNext()) {
+                    list.add((String) it.next());
+                }
+            }
+            games = list.toArray(new String[0]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (Throwable t) {
+            throw new IllegalStateException("cannot load " + resource, t);
+        }
+        moves = new String[games.length][];
+        for (int i = 0; i < games.length; i++) {
+            moves[i] = sanMoves(games[i]);
+        }
+    }
+
+    private static InputStream open(String resource) throws IOException {
+        InputStream in = Corpus.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("missing resource " + resource);
+        }
+        return in;
+    }
+
+    // the bundled games have no comments or variations, so the movetext
+    // is just move numbers, moves and the result
+    private static String[] sanMoves(String game) {
+        int start = game.lastIndexOf(']') + 1;
+        List<String> sans = new ArrayList<>();
+        for (String token : game.substring(start).trim().split("\\s+")) {
+            char c = token.isEmpty() ? '0' : token.charAt(0);
+            if (c < '0' || c > '9') {
+                sans.add(token);
+            }
+        }
+        return sans.toArray(new String[0]);
+    }
+}
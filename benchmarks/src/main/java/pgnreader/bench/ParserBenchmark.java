@@ -0,0 +1,102 @@
+package pgnreader.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of the parsing and replay entry points of PgnReader.
+ *
+ * Every benchmark except `fileContent` handles one game per operation,
+ * cycling through the corpus, so the scores are games per second and the
+ * GC profiler's gc.alloc.rate.norm is bytes allocated per game.
+ * `fileContent` reads the whole corpus file per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"short", "long", "promotion"})
+    public String corpus;
+
+    private Corpus games;
+    private Object[] finalBoards;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void load() throws Throwable {
+        games = new Corpus(corpus);
+        finalBoards = new Object[games.games.length];
+        for (int i = 0; i < finalBoards.length; i++) {
+            finalBoards[i] = replay(games.moves[i]);
+        }
+    }
+
+    private int nextGame() {
+        int i = next;
+        next = i + 1 == games.games.length ? 0 : i + 1;
+        return i;
+    }
+
+    private static Object replay(String[] moves) throws Throwable {
+        Object board = (Object) Api.NEW_BITBOARD.invokeExact();
+        for (int ply = 0; ply < moves.length; ply++) {
+            String move = moves[ply];
+            int type = (int) Api.DETERMINE_MOVE_TYPE.invokeExact(move);
+            board = (Object) Api.PERFORM_MOVE.invokeExact(type, ply & 1,
+                move, board);
+        }
+        return board;
+    }
+
+    @Benchmark
+    public String fileContent() throws Throwable {
+        return (String) Api.FILE_CONTENT.invokeExact(games.file.toString());
+    }
+
+    @Benchmark
+    public void tagValue(Blackhole bh) throws Throwable {
+        String game = games.games[nextGame()];
+        bh.consume((String) Api.TAG_VALUE.invokeExact("White", game));
+        bh.consume((String) Api.TAG_VALUE.invokeExact("Result", game));
+    }
+
+    @Benchmark
+    public void determineMoveType(Blackhole bh) throws Throwable {
+        String[] moves = games.moves[nextGame()];
+        for (String move : moves) {
+            bh.consume((int) Api.DETERMINE_MOVE_TYPE.invokeExact(move));
+        }
+    }
+
+    @Benchmark
+    public Object performMove() throws Throwable {
+        return replay(games.moves[nextGame()]);
+    }
+
+    @Benchmark
+    public String finalPosition() throws Throwable {
+        return (String) Api.FINAL_POSITION.invokeExact(
+            games.games[nextGame()]);
+    }
+
+    @Benchmark
+    public String getFEN() throws Throwable {
+        return (String) Api.GET_FEN.invokeExact(finalBoards[nextGame()]);
+    }
+}
@@ -0,0 +1,98 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BatchCommandTest {
+
+    @TempDir
+    Path dir;
+
+    private Path write(String name, String content) throws IOException {
+        Path file = dir.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String csv(String value) {
+        return BatchCommand.appendCsv(value, new StringBuilder()).toString();
+    }
+
+    private static String json(String value) {
+        return BatchCommand.appendJson(value, new StringBuilder())
+            .toString();
+    }
+
+    @Test
+    public void escapesCsvFields() {
+        assertEquals("", csv(null));
+        assertEquals("\"Carlsen, Magnus\"", csv("Carlsen, Magnus"));
+        assertEquals("\"O\"\"Kelly\"", csv("O\"Kelly"));
+        assertEquals("\"two\nlines\"", csv("two\nlines"));
+        assertEquals("\"a\rb\"", csv("a\rb"));
+        assertEquals("tab\there", csv("tab\there"));
+        assertEquals("Ding Liren", csv("Ding Liren"));
+    }
+
+    @Test
+    public void escapesJsonStrings() {
+        assertEquals("null", json(null));
+        assertEquals("\"O\\\"Kelly\"", json("O\"Kelly"));
+        assertEquals("\"a\\\\b\"", json("a\\b"));
+        assertEquals("\"1\\n2\\r3\\t4\"", json("1\n2\r3\t4"));
+        assertEquals("\"\\u0000\\u001f\"", json("\u0000\u001f"));
+        assertEquals("\"Café, ½\"", json("Café, ½"));
+    }
+
+    @Test
+    public void expandsGlobs() throws IOException {
+        Path a = write("a/2024-01.pgn", "");
+        Path b = write("a/2024-02.pgn.gz", "");
+        Path c = write("a/2023.pgn", "");
+        Path d = write("a/sub/x.pgn", "");
+        write("a/notes.txt", "");
+
+        String base = dir.resolve("a").toString();
+        assertEquals(Arrays.asList(a, b),
+            BatchCommand.expand(dir.resolve("a/2024-*").toString()));
+        assertEquals(Arrays.asList(c, a, d),
+            BatchCommand.expand(dir.resolve("a/**.pgn").toString()));
+        assertEquals(Arrays.asList(c, a, b),
+            BatchCommand.expand(dir.resolve("a/*.{pgn,gz}").toString()));
+        assertEquals(new ArrayList<Path>(), BatchCommand.expand(
+            dir.resolve("none/*.pgn").toString()));
+        // a directory is searched for PGN files and a file is itself
+        assertEquals(Arrays.asList(c, a, b, d), BatchCommand.expand(base));
+        assertEquals(Arrays.asList(c),
+            BatchCommand.expand(c.toString()));
+    }
+
+    @Test
+    public void reportsAnUnreadableFileAndGoesOn() throws IOException {
+        Path good = write("good.pgn", "[Event \"ok\"]\n\n1. e4 *\n");
+        Path missing = dir.resolve("missing.pgn");
+        Path output = dir.resolve("out.csv");
+        Path errors = dir.resolve("errors.csv");
+        assertEquals(0, BatchCommand.run(new String[] {"--tags", "Event",
+            "--output", output.toString(), "--errors", errors.toString(),
+            missing.toString(), good.toString()}));
+
+        List<String> lines = Files.readAllLines(output);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(1).startsWith("ok,"));
+        List<String> reported = Files.readAllLines(errors);
+        assertEquals(2, reported.size());
+        assertTrue(reported.get(1).startsWith(missing + ",1,0,,"),
+            reported.get(1));
+        assertTrue(reported.get(1).contains("NoSuchFileException"));
+    }
+}
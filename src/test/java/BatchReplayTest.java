@@ -0,0 +1,94 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BatchReplayTest {
+
+    private static final String[] OPENINGS = {
+        "1. e4 e5 2. Nf3", "1. d4 d5 2. c4 e6", "1. c4", "1. Nf3 d5 2. g3"
+    };
+
+    @TempDir
+    Path dir;
+
+    private Path write(String name, int games) throws IOException {
+        StringBuilder pgn = new StringBuilder();
+        for (int i = 0; i < games; i++) {
+            pgn.append("[Round \"").append(i).append("\"]\n\n")
+                .append(OPENINGS[i % OPENINGS.length]).append(" *\n\n");
+        }
+        Path file = dir.resolve(name);
+        Files.write(file, pgn.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String fen(String moves) {
+        return PgnReader.finalPosition(moves, new Bitboard());
+    }
+
+    @Test
+    public void replaysGamesInOrder() throws IOException {
+        List<Path> files = Arrays.asList(write("a.pgn", 150),
+            write("b.pgn", 50));
+        List<String> results = new ArrayList<>();
+        assertEquals(200, new BatchReplay(3, true).replay(files,
+            (index, game, fen) -> results.add(index + " " + fen)));
+        for (int i = 0; i < 200; i++) {
+            int opening = (i < 150 ? i : i - 150) % OPENINGS.length;
+            assertEquals(i + " " + fen(OPENINGS[opening]), results.get(i));
+        }
+    }
+
+    @Test
+    public void replaysEveryGameUnordered() throws IOException {
+        List<Path> files = Collections.singletonList(write("a.pgn", 500));
+        List<Long> indexes = new ArrayList<>();
+        new BatchReplay(4, false).replay(files,
+            (index, game, fen) -> indexes.add(index));
+        Collections.sort(indexes);
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, (long) indexes.get(i));
+        }
+    }
+
+    @Test
+    public void findsPgnFilesUnderADirectory() throws IOException {
+        Path a = write("a.pgn", 1);
+        Files.createDirectory(dir.resolve("sub"));
+        Path b = write("sub/b.pgn.gz", 0);
+        write("notes.txt", 0);
+        assertEquals(Arrays.asList(a, b), BatchReplay.pgnFiles(dir));
+        assertEquals(Collections.singletonList(a), BatchReplay.pgnFiles(a));
+    }
+
+    @Test
+    public void rethrowsAFailedBatchOnTheSubmittingThread()
+        throws IOException {
+        List<Integer> delivered = new ArrayList<>();
+        try (BatchReplay.Engine<Integer> engine = new BatchReplay.Engine<>(2,
+            true, batch -> {
+                if (batch.contains(3)) {
+                    throw new IllegalArgumentException("bad batch");
+                }
+            })) {
+            assertEquals("bad batch", assertThrows(
+                IllegalArgumentException.class, () -> {
+                    engine.submit(Arrays.asList(1, 2), delivered::add);
+                    engine.submit(Arrays.asList(3), delivered::add);
+                    engine.submit(Arrays.asList(4), delivered::add);
+                    engine.finish(delivered::add);
+                }).getMessage());
+        }
+        assertEquals(Arrays.asList(1, 2), delivered);
+    }
+}
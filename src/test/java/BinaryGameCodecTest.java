@@ -0,0 +1,146 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BinaryGameCodecTest {
+
+    private static final String[] GAMES = {
+        "1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Ba4 Nf6 5. O-O Be7 6. Re1 b5"
+            + " 7. Bb3 d6 8. c3 O-O 1/2-1/2",
+        "1. d4 {a comment} d5 (1... Nf6) 2. c4 dxc4 3. e4 b5 4. a4 c6"
+            + " 5. axb5 cxb5 6. b3 cxb3 7. Qxb3 a6 8. Bxb5+ axb5 9. Qxb5+"
+            + " Bd7 10. Qxb8 Rxb8 11. Rxa6 *"
+    };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void roundTrips() throws IOException {
+        StringBuilder pgn = new StringBuilder();
+        for (int i = 0; i < GAMES.length; i++) {
+            pgn.append("[Event \"Game ").append(i).append("\"]\n")
+                .append("[White \"O\\\"Kelly\"]\n\n")
+                .append(GAMES[i]).append("\n\n");
+        }
+        Path pgnFile = dir.resolve("games.pgn");
+        Path binFile = dir.resolve("games.bin");
+        Files.write(pgnFile, pgn.toString().getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(GAMES.length, BinaryGameCodec.export(pgnFile, binFile));
+        assertTrue(Files.size(binFile) < Files.size(pgnFile));
+        try (BinaryGameCodec.Reader reader =
+            new BinaryGameCodec.Reader(binFile)) {
+            for (int i = 0; i < GAMES.length; i++) {
+                assertTrue(reader.next());
+                assertEquals("Game " + i, reader.header().get("Event"));
+                assertEquals("O\"Kelly", reader.header().get("White"));
+                Bitboard board = new Bitboard();
+                PgnReader.finalPosition(GAMES[i], board);
+                assertEquals(FenWriter.toFen(board),
+                    FenWriter.toFen(reader.finalBoard()));
+            }
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void leavesOutAndReportsGamesItCannotStore() throws IOException {
+        String pgn = "[Event \"ok\"]\n\n1. e4 e5 *\n\n"
+            + "[Event \"illegal\"]\n\n1. e4 e5 2. Ke3 *\n\n"
+            + "[Event \"set up\"]\n[SetUp \"1\"]\n"
+            + "[FEN \"8/8/8/8/8/8/4k3/4K3 w - - 0 1\"]\n\n1. Kf1 *\n\n"
+            + "[Event \"ok\"]\n\n1. d4 *\n\n";
+        Path pgnFile = dir.resolve("mixed.pgn");
+        Path binFile = dir.resolve("mixed.bin");
+        Files.write(pgnFile, pgn.getBytes(StandardCharsets.UTF_8));
+
+        List<PgnError> errors = new ArrayList<>();
+        assertEquals(2, BinaryGameCodec.export(pgnFile, binFile,
+            errors::add));
+        assertEquals(2, errors.size());
+        assertEquals(1, errors.get(0).gameIndex);
+        assertEquals(3, errors.get(0).ply);
+        assertEquals("Ke3", errors.get(0).token);
+        assertEquals(pgnFile.toString(), errors.get(0).source);
+        assertEquals(2, errors.get(1).gameIndex);
+        assertEquals(BinaryGameCodec.SET_UP_POSITION, errors.get(1).reason);
+        try (BinaryGameCodec.Reader reader =
+            new BinaryGameCodec.Reader(binFile)) {
+            assertTrue(reader.next());
+            assertEquals(2, reader.moveCount());
+            assertTrue(reader.next());
+            assertEquals(1, reader.moveCount());
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void leavesOutGamesWithTagsTooLongToStore() throws IOException {
+        char[] longest = new char[65535];
+        Arrays.fill(longest, 'a');
+        char[] tooLong = new char[21846]; // 65538 bytes as UTF-8
+        Arrays.fill(tooLong, '\u20ac');
+        String pgn = "[Annotator \"" + new String(longest) + "\"]\n\n"
+            + "1. e4 *\n\n"
+            + "[Annotator \"" + new String(tooLong) + "\"]\n\n1. d4 *\n\n"
+            + "[Event \"ok\"]\n\n1. c4 *\n\n";
+        Path pgnFile = dir.resolve("long.pgn");
+        Path binFile = dir.resolve("long.bin");
+        Files.write(pgnFile, pgn.getBytes(StandardCharsets.UTF_8));
+
+        List<PgnError> errors = new ArrayList<>();
+        assertEquals(2, BinaryGameCodec.export(pgnFile, binFile,
+            errors::add));
+        assertEquals(1, errors.size());
+        assertEquals(1, errors.get(0).gameIndex);
+        assertEquals(BinaryGameCodec.TAG_TOO_LONG, errors.get(0).reason);
+        try (BinaryGameCodec.Reader reader =
+            new BinaryGameCodec.Reader(binFile)) {
+            assertTrue(reader.next());
+            assertEquals(new String(longest),
+                reader.header().get("Annotator"));
+            assertTrue(reader.next());
+            assertEquals("ok", reader.header().get("Event"));
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void storesMovesInAscendingOrder() throws IOException {
+        Path pgnFile = dir.resolve("one.pgn");
+        Path binFile = dir.resolve("one.bin");
+        Files.write(pgnFile, "1. a3 *\n".getBytes(StandardCharsets.UTF_8));
+        BinaryGameCodec.export(pgnFile, binFile);
+        int[] legal = new int[MoveGenerator.MAX_MOVES];
+        int count = BinaryGameCodec.legalMoves(new Bitboard(), legal);
+        for (int i = 1; i < count; i++) {
+            assertTrue(legal[i - 1] < legal[i]);
+        }
+        int a3 = 48 | 40 << 6; // a2 to a3
+        byte[] bytes = Files.readAllBytes(binFile);
+        assertEquals(Arrays.binarySearch(legal, 0, count, a3),
+            bytes[bytes.length - 1]);
+    }
+
+    @Test
+    public void rejectsOtherVersions() throws IOException {
+        Path binFile = dir.resolve("future.bin");
+        Files.write(binFile, ByteBuffer.allocate(8).putInt(0x50474E42)
+            .putInt(2).array());
+        assertThrows(IOException.class,
+            () -> new BinaryGameCodec.Reader(binFile));
+    }
+}
@@ -0,0 +1,67 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class FenTest {
+
+    private static final String START =
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    @Test
+    public void roundTrips() {
+        for (String fen : Perft.FENS) {
+            assertEquals(fen, FenWriter.toFen(Bitboard.fromFen(fen)));
+        }
+        String ep = "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq"
+            + " f6 0 3";
+        assertEquals(ep, FenWriter.toFen(Bitboard.fromFen(ep)));
+    }
+
+    @Test
+    public void writesTheStartPosition() {
+        assertEquals(START, FenWriter.toFen(new Bitboard()));
+        assertEquals(START.substring(0, START.indexOf(' ')),
+            PgnReader.finalPosition(""));
+    }
+
+    private static String fullFen(String game) {
+        Bitboard board = new Bitboard();
+        PgnReader.finalPosition(game, board);
+        return FenWriter.toFen(board);
+    }
+
+    @Test
+    public void tracksStateThroughMoves() {
+        assertEquals("rnbqkbnr/pp1ppppp/8/2p5/4P3/5N2/PPPP1PPP/RNBQKB1R b"
+            + " KQkq - 1 2", fullFen("1. e4 c5 2. Nf3"));
+        assertEquals("rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPPKPPP/RNBQ1BNR b"
+            + " kq - 1 2", fullFen("1. e4 e5 2. Ke2"));
+        assertEquals("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w"
+            + " KQkq f6 0 3", fullFen("1. e4 d5 2. e5 f5"));
+    }
+
+    @Test
+    public void roundTripsThroughMoves() {
+        String fen = fullFen("1. d4 Nf6 2. c4 e6 3. Nc3 Bb4 4. Qc2 O-O");
+        assertEquals(fen, FenWriter.toFen(Bitboard.fromFen(fen)));
+    }
+
+    @Test
+    public void matchesTheCharArrayBoard() {
+        String game = "1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Ba4 Nf6 5. O-O Be7"
+            + " 6. Re1 b5 7. Bb3 d6 8. c3 O-O 9. h3 Nb8 10. d4 Nbd7";
+        Bitboard board = new Bitboard();
+        String fen = PgnReader.finalPosition(game, board);
+        assertEquals(PgnReader.getFEN(board.toArray()), fen);
+    }
+
+    @Test
+    public void rejectsBadFen() {
+        assertThrows(IllegalArgumentException.class,
+            () -> Bitboard.fromFen("8/8/8 w - -"));
+        assertThrows(IllegalArgumentException.class,
+            () -> Bitboard.fromFen("rnbqkbnr/ppppxppp/8/8/8/8/PPPPPPPP/"
+                + "RNBQKBNR w KQkq - 0 1"));
+    }
+}
@@ -0,0 +1,72 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class GameTreeTest {
+
+    private static final String RUY_LOPEZ = "1. e4 e5 2. Nf3 Nc6 3. Bb5 a6"
+        + " 4. Ba4 Nf6 5. O-O Be7 6. Re1 b5 7. Bb3 d6 8. c3 O-O 9. h3 Nb8"
+        + " 10. d4 Nbd7 11. Nbd2 Bb7 12. Bc2 Re8 *";
+
+    private static String fen(String moves) {
+        Bitboard board = new Bitboard();
+        PgnReader.finalPosition(moves, board);
+        return FenWriter.toFen(board);
+    }
+
+    @Test
+    public void replaysTheMainLine() {
+        GameTree tree = GameTree.parse(RUY_LOPEZ);
+        assertEquals(24, tree.size());
+        assertEquals("Nbd2", tree.san(20));
+        assertNull(tree.illegalMove());
+        assertEquals(fen(RUY_LOPEZ), FenWriter.toFen(tree.finalBoard()));
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i <= tree.size(); i++) {
+            assertEquals(fen(line.toString()),
+                FenWriter.toFen(tree.positionBefore(i)), "before " + i);
+            if (i < tree.size()) {
+                line.append(tree.san(i)).append(' ');
+            }
+        }
+    }
+
+    @Test
+    public void parsesVariationsWhenAskedFor() {
+        GameTree tree = GameTree.parse("1. e4 e5 (1... c5 2. Nf3 (2. Nc3)"
+            + " 2... Qxh8) (1... e6) 2. Nf3 *");
+        assertEquals(3, tree.size());
+        assertEquals(2, tree.variationCount());
+        assertEquals(2, tree.variationCount(1));
+        assertEquals(0, tree.variationCount(0));
+
+        GameTree sicilian = tree.variation(1, 0);
+        assertSame(sicilian, tree.variation(1, 0));
+        assertEquals("c5", sicilian.san(0));
+        // the bad move in it was not looked at until now
+        assertEquals(2, sicilian.size());
+        assertEquals("Qxh8", sicilian.illegalMove());
+        assertEquals(fen("1. e4 c5 2. Nf3"),
+            FenWriter.toFen(sicilian.finalBoard()));
+        assertEquals(fen("1. e4 c5 2. Nc3"),
+            FenWriter.toFen(sicilian.variation(1, 0).finalBoard()));
+        assertEquals(fen("1. e4 e6"),
+            FenWriter.toFen(tree.variation(1, 1).finalBoard()));
+        assertThrows(IndexOutOfBoundsException.class,
+            () -> tree.variation(1, 2));
+    }
+
+    @Test
+    public void endsTheLineAtAnIllegalMove() {
+        GameTree tree = GameTree.parse("1. e4 e5 2. Ke3 (2. Nf3) Nc6"
+            + " 3. Nf3 *");
+        assertEquals(2, tree.size());
+        assertEquals("Ke3", tree.illegalMove());
+        assertEquals(0, tree.variationCount());
+        assertEquals(fen("1. e4 e5"), FenWriter.toFen(tree.finalBoard()));
+        assertEquals(fen("1. e4"), FenWriter.toFen(tree.positionBefore(1)));
+    }
+}
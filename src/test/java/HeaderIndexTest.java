@@ -0,0 +1,44 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class HeaderIndexTest {
+
+    private static final String PGN =
+        "[Event \"Open\"]\n[White \"O\\\"Kelly\"]\n\n1. e4 *\n\n"
+        + "[Event \"Open\"]\n[White \"C:\\\\games\"]\n\n1. d4 *\n\n"
+        + "[Event \"Club\"]\n\n1. c4 *\n\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void valuesMatchTheParsedHeader() throws IOException {
+        Path pgnFile = dir.resolve("games.pgn");
+        Files.write(pgnFile, PGN.getBytes(StandardCharsets.UTF_8));
+        HeaderIndex index = HeaderIndex.build(pgnFile,
+            new String[] {"Event", "White"});
+        assertEquals(3, index.size());
+        assertEquals("O\"Kelly", index.value(0, "White"));
+        assertEquals(PgnHeader.parse(PGN).get("White"),
+            index.value(0, "White"));
+        assertEquals("C:\\games", index.value(1, "White"));
+        assertNull(index.value(2, "White"));
+        assertArrayEquals(new int[] {0},
+            index.find("White", "O\"Kelly"::equals));
+        assertArrayEquals(new int[] {0, 1},
+            index.find("Event", "Open"::equals));
+
+        Path indexFile = dir.resolve("games.hdx");
+        index.save(indexFile);
+        assertEquals("C:\\games",
+            HeaderIndex.load(indexFile).value(1, "White"));
+    }
+}
@@ -0,0 +1,113 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class IngestPipelineTest {
+
+    @TempDir
+    Path dir;
+
+    private Path write(String name, String pgn) throws IOException {
+        Path file = dir.resolve(name);
+        Files.write(file, pgn.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private List<String> events(Path... files) throws IOException {
+        List<String> events = new ArrayList<>();
+        new IngestPipeline(2, 4, 8, true).run(Arrays.asList(files),
+            game -> events.add(game.header.get("Event")));
+        return events;
+    }
+
+    @Test
+    public void deliversGamesInOrder() throws IOException {
+        StringBuilder pgn = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            pgn.append("[Event \"").append(i).append("\"]\n\n1. e4 e5 *\n\n");
+            expected.add(Integer.toString(i));
+        }
+        assertEquals(expected, events(write("a.pgn", pgn.toString())));
+    }
+
+    @Test
+    public void gamesEndWithTheirFile() throws IOException {
+        Path comment = write("a.pgn",
+            "[Event \"A\"]\n\n1. e4 {an unclosed comment");
+        Path movetext = write("b.pgn", "[Event \"B\"]\n\n1. d4 d5");
+        Path next = write("c.pgn", "[Event \"C\"]\n\n1. c4 *\n");
+        assertEquals(Arrays.asList("A", "B", "C"),
+            events(comment, movetext, next));
+    }
+
+    @Test
+    public void reportsBadGamesWithTheirFile() throws IOException {
+        Path good = write("a.pgn", "[Event \"A\"]\n\n1. e4 *\n");
+        Path bad = write("b.pgn", "[Event \"B\"]\n\n1. d4 *\n\n"
+            + "[Event \"C\"]\n\n1. e4 e5 2. e5 *\n");
+        List<String> events = new ArrayList<>();
+        List<PgnError> errors = new ArrayList<>();
+        new IngestPipeline(2, 4, 8, true).run(Arrays.asList(good, bad),
+            game -> events.add(game.header.get("Event")), errors::add);
+        assertEquals(Arrays.asList("A", "B"), events);
+        assertEquals(1, errors.size());
+        assertEquals(bad.toString(), errors.get(0).source);
+        assertEquals(1, errors.get(0).gameIndex);
+        assertEquals(PgnError.ILLEGAL_MOVE, errors.get(0).reason);
+    }
+
+    @Test
+    public void reportsAFileItCannotReadAndGoesOn() throws IOException {
+        Path missing = dir.resolve("missing.pgn");
+        StringBuilder pgn = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            pgn.append("[Event \"T").append(i).append("\"]\n\n1. e4 *\n\n");
+        }
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(pgn.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] bytes = gzip.toByteArray();
+        Path truncated = dir.resolve("truncated.pgn.gz");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length / 2));
+        Path good = write("c.pgn", "[Event \"C\"]\n\n1. c4 *\n");
+
+        List<String> events = new ArrayList<>();
+        List<PgnError> errors = new ArrayList<>();
+        long delivered = new IngestPipeline(2, 4, 8, true).run(
+            Arrays.asList(missing, truncated, good),
+            game -> events.add(game.header.get("Event")), errors::add);
+        assertEquals(events.size(), delivered);
+        assertEquals(2, errors.size());
+        assertEquals(missing.toString(), errors.get(0).source);
+        assertEquals(0, errors.get(0).gameIndex);
+        assertTrue(errors.get(0).reason.contains("NoSuchFileException"));
+        // the games read before the truncation are kept
+        assertEquals(truncated.toString(), errors.get(1).source);
+        int kept = events.size() - 1;
+        assertTrue(kept > 0 && kept < 2000);
+        assertEquals(kept, errors.get(1).gameIndex);
+        assertEquals("T" + (kept - 1), events.get(kept - 1));
+        assertEquals("C", events.get(kept));
+    }
+
+    @Test
+    public void failsOnAFileItCannotReadWithoutAnErrorHandler() {
+        Path missing = dir.resolve("missing.pgn");
+        assertThrows(IOException.class, () -> events(missing));
+    }
+}
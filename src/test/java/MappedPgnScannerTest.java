@@ -0,0 +1,113 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedPgnScannerTest {
+
+    private static final String GAMES =
+        "[Event \"First\"]\n[White \"O\\\"Kelly\"]\n\n"
+        + "1. e4 {best} e5 (1... c5 2. Nf3) 2.Nf3 $1 Nc6 1-0\n\n"
+        + "[Event \"Second\"]\n\n1. d4 d5 *\n";
+
+    @TempDir
+    Path dir;
+
+    private Path write(String text) throws IOException {
+        Path file = dir.resolve("games.pgn");
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    // the events of a scan, one string each
+    private static List<String> scan(MappedPgnScanner scanner) {
+        List<String> events = new ArrayList<>();
+        scanner.scan(new MappedPgnScanner.Handler() {
+            @Override
+            public void gameStart(long offset) {
+                events.add("start " + offset);
+            }
+
+            @Override
+            public void tag(long nameOffset, int nameLength,
+                long valueOffset, int valueLength) {
+                events.add(scanner.string(nameOffset, nameLength) + "="
+                    + scanner.string(valueOffset, valueLength));
+            }
+
+            @Override
+            public void move(long offset, int length) {
+                events.add(scanner.string(offset, length));
+            }
+
+            @Override
+            public void result(long offset, int length) {
+                events.add("result " + scanner.string(offset, length));
+            }
+
+            @Override
+            public void gameEnd(long start, long end) {
+                events.add("end " + start + " " + end);
+            }
+        });
+        return events;
+    }
+
+    private List<String> scan(String text) throws IOException {
+        return scan(new MappedPgnScanner(write(text)));
+    }
+
+    @Test
+    public void reportsTagsMovesAndGameBoundaries() throws IOException {
+        int second = GAMES.indexOf("[Event \"Second");
+        assertEquals(Arrays.asList("start 0", "Event=First",
+            "White=O\\\"Kelly", "e4", "e5", "Nf3", "Nc6", "result 1-0",
+            "end 0 " + (GAMES.indexOf("1-0") + 3), "start " + second,
+            "Event=Second", "d4", "d5", "result *",
+            "end " + second + " " + (GAMES.length() - 1)), scan(GAMES));
+    }
+
+    @Test
+    public void crossesSegmentBoundaries() throws IOException {
+        Path file = write(GAMES);
+        List<String> whole = scan(new MappedPgnScanner(file));
+        for (int bits = 1; bits <= 4; bits++) {
+            assertEquals(whole, scan(new MappedPgnScanner(file, bits)));
+        }
+    }
+
+    @Test
+    public void skipsEscapeLinesAndLineComments() throws IOException {
+        assertEquals(Arrays.asList("start 11", "e4", "e5", "result *",
+            "end 11 35"),
+            scan("% e4 e5 d4\n1. e4 ; d4 d5\n%Nf3\n e5 *"));
+    }
+
+    @Test
+    public void endsAnUnterminatedLastGameAtTheEndOfTheFile()
+        throws IOException {
+        String text = "[Event \"x\"]\n\n1. e4 e5 2. Nf3";
+        assertEquals(Arrays.asList("start 0", "Event=x", "e4", "e5", "Nf3",
+            "end 0 " + text.length()), scan(text));
+    }
+
+    @Test
+    public void endsAGameWithoutAResultAtTheNextTags() throws IOException {
+        assertEquals(Arrays.asList("start 0", "e4", "end 0 8", "start 8",
+            "Event=y", "d4", "end 8 26"),
+            scan("1. e4\n\n\n[Event \"y\"]\n1. d4\n"));
+    }
+
+    @Test
+    public void findsNothingInAnEmptyFile() throws IOException {
+        assertEquals(new ArrayList<String>(), scan(""));
+        assertEquals(new ArrayList<String>(), scan("\n\n{ nothing }\n"));
+    }
+}
@@ -0,0 +1,72 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class MoveGeneratorTest {
+
+    private static int square(String name) {
+        return Bitboard.square('8' - name.charAt(1), name.charAt(0) - 'a');
+    }
+
+    private static String san(String fen, String from, String to,
+        int promotion) {
+        int move = MoveGenerator.encode(square(from), square(to), promotion);
+        return MoveGenerator.appendSan(Bitboard.fromFen(fen), move,
+            new StringBuilder()).toString();
+    }
+
+    @Test
+    public void writesSan() {
+        String start = FenWriter.toFen(new Bitboard());
+        assertEquals("e4", san(start, "e2", "e4", 0));
+        assertEquals("Nf3", san(start, "g1", "f3", 0));
+
+        String special = "r3k3/1P6/8/3pP3/8/8/8/R3K2R w KQq d6 0 1";
+        assertEquals("exd6", san(special, "e5", "d6", 0));
+        assertEquals("bxa8=Q", san(special, "b7", "a8", Bitboard.QUEEN));
+        assertEquals("b8=N", san(special, "b7", "b8", Bitboard.KNIGHT));
+        assertEquals("O-O", san(special, "e1", "g1", 0));
+        assertEquals("O-O-O", san(special, "e1", "c1", 0));
+        assertEquals("Rxa8", san(special, "a1", "a8", 0));
+    }
+
+    @Test
+    public void disambiguatesOnlyAsFarAsNeeded() {
+        assertEquals("Nbd2", san("4k3/8/8/8/8/5N2/8/1N2K3 w - - 0 1", "b1",
+            "d2", 0));
+        assertEquals("R1a3", san("4k3/8/8/8/R7/8/8/R3K3 w - - 0 1", "a1",
+            "a3", 0));
+        assertEquals("Qa1b2", san("4k3/8/8/8/8/Q7/8/Q1Q1K3 w - - 0 1", "a1",
+            "b2", 0));
+        // the knight on e2 is pinned, so it cannot go to c3 as well
+        assertEquals("Nc3", san("4k3/4r3/8/8/8/8/4N3/1N2K3 w - - 0 1", "b1",
+            "c3", 0));
+    }
+
+    @Test
+    public void resolvesTheSanOfEveryGeneratedMove() {
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        for (String fen : Perft.FENS) {
+            Bitboard board = Bitboard.fromFen(fen);
+            int n = MoveGenerator.generate(board, moves);
+            for (int i = 0; i < n; i++) {
+                String san = MoveGenerator.appendSan(board, moves[i],
+                    new StringBuilder()).toString();
+                assertEquals(moves[i], MoveGenerator.resolve(board,
+                    SanDecoder.decode(san)), fen + " " + san);
+            }
+        }
+    }
+
+    @Test
+    public void resolvesMovesWrittenDifferentlyAlike() {
+        Bitboard board = new Bitboard();
+        PgnReader.finalPosition("1. e4 d5 2. Nf3 Nf6", board);
+        assertEquals(MoveGenerator.resolve(board, SanDecoder.decode("exd5")),
+            MoveGenerator.resolve(board, SanDecoder.decode("ed5")));
+        assertEquals(MoveGenerator.resolve(board, SanDecoder.decode("Ne5")),
+            MoveGenerator.resolve(board, SanDecoder.decode("Nf3e5")));
+        assertEquals(-1, MoveGenerator.resolve(board,
+            SanDecoder.decode("Qd3")));
+    }
+}
@@ -0,0 +1,82 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class MovetextLexerTest {
+
+    private static List<String> mainLine(String text) {
+        MovetextLexer lexer = new MovetextLexer(text);
+        List<String> moves = new ArrayList<>();
+        while (lexer.nextMove()) {
+            moves.add(text.substring(lexer.start(), lexer.end()));
+        }
+        return moves;
+    }
+
+    private static List<Integer> kinds(String text) {
+        MovetextLexer lexer = new MovetextLexer(text);
+        List<Integer> kinds = new ArrayList<>();
+        int kind;
+        while ((kind = lexer.next()) != MovetextLexer.END) {
+            kinds.add(kind);
+        }
+        return kinds;
+    }
+
+    @Test
+    public void walksTheMainLine() {
+        assertEquals(Arrays.asList("e4", "e5", "Nf3", "Nc6"),
+            mainLine("[Event \"?\"]\n\n1. e4 {best by test} e5 $1"
+                + " (1... c5 2. Nf3 (2. c3)) 2.Nf3 ; comment\n2... Nc6 !"
+                + " 1-0 3. Bb5"));
+    }
+
+    @Test
+    public void skipsAnEnPassantMark() {
+        assertEquals(Arrays.asList("e4", "Nf6", "e5", "d5", "exd6", "Qxd6",
+            "d4"),
+            mainLine("1. e4 Nf6 2. e5 d5 3. exd6 e.p. Qxd6 4. d4 *"));
+        assertEquals(Arrays.asList(MovetextLexer.MOVE, MovetextLexer.NAG),
+            kinds("exd6 e.p."));
+    }
+
+    @Test
+    public void skipsEscapeLines() {
+        assertEquals(Arrays.asList("d4", "d5"),
+            mainLine("% e4 e5\n1. d4 d5 *"));
+    }
+
+    @Test
+    public void reportsTokenKinds() {
+        assertEquals(Arrays.asList(MovetextLexer.TAG,
+            MovetextLexer.MOVE_NUMBER, MovetextLexer.MOVE,
+            MovetextLexer.COMMENT, MovetextLexer.NAG,
+            MovetextLexer.VARIATION_START, MovetextLexer.MOVE,
+            MovetextLexer.VARIATION_END, MovetextLexer.RESULT),
+            kinds("[Site \"x\"] 1. e4 {c} $2 (d4) 1/2-1/2"));
+    }
+
+    @Test
+    public void givesCommentsWithoutBraces() {
+        String text = "e4 {a comment} e5";
+        MovetextLexer lexer = new MovetextLexer(text);
+        lexer.next();
+        assertEquals(MovetextLexer.COMMENT, lexer.next());
+        assertEquals("a comment", text.substring(lexer.start(),
+            lexer.end()));
+    }
+
+    @Test
+    public void staysInsideItsRange() {
+        String text = "xx 1. e4 e5 yy";
+        MovetextLexer lexer = new MovetextLexer(text, 3, 11);
+        List<String> moves = new ArrayList<>();
+        while (lexer.nextMove()) {
+            moves.add(text.substring(lexer.start(), lexer.end()));
+        }
+        assertEquals(Arrays.asList("e4", "e5"), moves);
+    }
+}
@@ -0,0 +1,91 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class OpeningTreeTest {
+
+    private static long hash(String moves) {
+        Bitboard board = new Bitboard();
+        PgnReader.finalPosition(moves, board);
+        return board.hash();
+    }
+
+    private static String game(String result, String moves) {
+        return "[Result \"" + result + "\"]\n\n" + moves + " " + result;
+    }
+
+    @Test
+    public void countsPositionsMovesAndResults() {
+        OpeningTree tree = new OpeningTree(4);
+        tree.add(game("1-0", "1. e4 e5 2. Nf3 Nc6 3. Bb5"));
+        tree.add(game("0-1", "1. e4 c5 2. Nf3 d6"));
+        tree.add(game("1/2-1/2", "1. d4 d5"));
+
+        long start = OpeningTree.startHash();
+        assertEquals(3, tree.games(start));
+        assertEquals(2, tree.games(hash("1. e4")));
+        assertEquals(1, tree.results(hash("1. e4"), OpeningTree.WHITE_WINS));
+        assertEquals(1, tree.results(hash("1. e4"), OpeningTree.BLACK_WINS));
+        // past maxPly
+        assertEquals(0, tree.games(hash("1. e4 e5 2. Nf3 Nc6 3. Bb5")));
+
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        long[] counts = new long[MoveGenerator.MAX_MOVES];
+        assertEquals(2, tree.nextMoves(start, moves, counts));
+        assertEquals(MoveGenerator.resolve(new Bitboard(),
+            SanDecoder.decode("e4")), moves[0]);
+        assertEquals(2, counts[0]);
+    }
+
+    @Test
+    public void countsARepeatedPositionOncePerGame() {
+        OpeningTree tree = new OpeningTree(12);
+        tree.add(game("*", "1. Nf3 Nf6 2. Ng1 Ng8 3. Nf3 Nf6 4. Ng1 Ng8"));
+        assertEquals(1, tree.games(OpeningTree.startHash()));
+        assertEquals(1, tree.games(hash("1. Nf3")));
+        assertEquals(4, tree.positions()); // 2... Ng8 is the start again
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        long[] counts = new long[MoveGenerator.MAX_MOVES];
+        tree.nextMoves(OpeningTree.startHash(), moves, counts);
+        assertEquals(1, counts[0]);
+    }
+
+    @Test
+    public void countsAMoveHoweverItIsWritten() {
+        OpeningTree tree = new OpeningTree(12);
+        tree.add(game("*", "1. e4 d5 2. exd5 Nf6 3. d4 Nxd5 4. Nf3 g6"
+            + " 5. Nbc3"));
+        tree.add(game("*", "1. e4 d5 2. ed5 Nf6 3. d4 Nxd5 4. Nf3 g6"
+            + " 5. Nc3"));
+        tree.add(game("*", "1. e4 d5 2. e5 Nc6 3. Nf3 Bg4 4. Be2 e6"
+            + " 5. d3 f6"));
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        long[] counts = new long[MoveGenerator.MAX_MOVES];
+        assertEquals(2, tree.nextMoves(hash("1. e4 d5"), moves, counts));
+        assertEquals(2, counts[0]);
+        assertEquals(MoveGenerator.encode(Bitboard.square(4, 4),
+            Bitboard.square(3, 3), 0), moves[0]);
+        long beforeNc3 = hash("1. e4 d5 2. exd5 Nf6 3. d4 Nxd5 4. Nf3 g6");
+        assertEquals(1, tree.nextMoves(beforeNc3, moves, counts));
+        assertEquals(2, counts[0]);
+    }
+
+    @Test
+    public void stopsAtAnIllegalMove() {
+        OpeningTree tree = new OpeningTree(12);
+        tree.add(game("*", "1. e4 e5 2. e5 Nc6"));
+        assertEquals(3, tree.positions());
+    }
+
+    @Test
+    public void mergesTrees() {
+        OpeningTree a = new OpeningTree(6);
+        OpeningTree b = new OpeningTree(6);
+        a.add(game("1-0", "1. e4 e5"));
+        b.add(game("1-0", "1. e4 c5"));
+        a.merge(b);
+        assertEquals(2, a.games(hash("1. e4")));
+        assertEquals(2, a.results(hash("1. e4"), OpeningTree.WHITE_WINS));
+        assertEquals(4, a.positions());
+    }
+}
@@ -0,0 +1,34 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the move generator against the published perft counts of
+ * `Perft`, up to the depths that finish in about a second in all.
+ */
+public class PerftTest {
+
+    private static final long MAX_NODES = 10000000;
+
+    @Test
+    public void matchesReferenceCounts() {
+        for (int p = 0; p < Perft.FENS.length; p++) {
+            Bitboard board = Bitboard.fromFen(Perft.FENS[p]);
+            for (int depth = 1; depth <= Perft.EXPECTED[p].length
+                && Perft.EXPECTED[p][depth - 1] <= MAX_NODES; depth++) {
+                assertEquals(Perft.EXPECTED[p][depth - 1],
+                    Perft.perft(board, depth),
+                    Perft.NAMES[p] + " depth " + depth);
+            }
+        }
+    }
+
+    @Test
+    public void leavesTheBoardAsItFoundIt() {
+        Bitboard board = Bitboard.fromFen(Perft.FENS[1]);
+        long hash = board.hash();
+        Perft.perft(board, 3);
+        assertEquals(Perft.FENS[1], FenWriter.toFen(board));
+        assertEquals(hash, board.hash());
+    }
+}
@@ -0,0 +1,98 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class PgnErrorTest {
+
+    private final List<PgnError> errors = new ArrayList<>();
+
+    private String replay(String game) {
+        return PgnReader.finalPosition(game, new Bitboard(), 7, errors::add);
+    }
+
+    @Test
+    public void reportsNothingForAGoodGame() {
+        assertEquals(PgnReader.finalPosition("1. e4 e5 2. Nf3 *"),
+            replay("1. e4 e5 2. Nf3 *"));
+        assertEquals(0, errors.size());
+    }
+
+    @Test
+    public void reportsAnUnrecognizedMove() {
+        assertNull(replay("1. e4 e5 2. Nf9 Nc6"));
+        assertEquals(1, errors.size());
+        PgnError error = errors.get(0);
+        assertEquals(7, error.gameIndex);
+        assertEquals(3, error.ply);
+        assertEquals("Nf9", error.token);
+        assertEquals(PgnError.UNRECOGNIZED_MOVE, error.reason);
+        assertEquals("game 8, 2. Nf9: unrecognized move", error.toString());
+    }
+
+    @Test
+    public void reportsAMoveNoPieceCanMake() {
+        assertNull(replay("1. e4 Bb4"));
+        PgnError error = errors.get(0);
+        assertEquals(2, error.ply);
+        assertEquals(PgnError.NO_PIECE, error.reason);
+        assertEquals("game 8, 1... Bb4: " + PgnError.NO_PIECE,
+            error.toString());
+    }
+
+    @Test
+    public void reportsIllegalMoves() {
+        String[][] cases = {
+            {"1. Nd2", "1"}, // onto White's own pawn
+            {"1. e4 e5 2. e5", "3"}, // a push onto Black's pawn
+            {"1. O-O", "1"}, // through the bishop and knight
+            {"1. e4 e5 2. Ke2 Ke7 3. Ke1 Ke8 4. Nf3 Nf6 5. Be2 Be7 6. O-O",
+                "11"}, // after the king has moved
+            {"1. e4 f5 2. Qh5+ Nf6", "4"}, // leaves the king in check
+            {"1. e4 d5 2. e5 f6 3. d4 f5 4. exf6", "7"}, // no en passant
+            {"1. h4 g5 2. hxg5 h6 3. gxh6 Nf6 4. h7 Ng8 5. h8", "9"}
+        };
+        for (String[] c : cases) {
+            errors.clear();
+            assertNull(replay(c[0]), c[0]);
+            assertEquals(PgnError.ILLEGAL_MOVE, errors.get(0).reason, c[0]);
+            assertEquals(Integer.parseInt(c[1]), errors.get(0).ply, c[0]);
+        }
+    }
+
+    @Test
+    public void acceptsEnPassantAndPromotion() {
+        assertNotNull(replay("1. e4 d5 2. e5 f5 3. exf6 Nc6 4. fxg7 Nf6"
+            + " 5. gxh8=Q"));
+        assertEquals(0, errors.size());
+    }
+
+    @Test
+    public void namesTheSource() {
+        PgnError error = new PgnError(3, 2, "Ke9", PgnError.UNRECOGNIZED_MOVE)
+            .in("games/a.pgn");
+        assertEquals("games/a.pgn", error.source);
+        assertEquals("games/a.pgn: game 4, 1... Ke9: unrecognized move",
+            error.toString());
+    }
+
+    @Test
+    public void leavesOutAMissingToken() {
+        assertEquals("game 1: starts from a set-up position",
+            new PgnError(0, 0, null, "starts from a set-up position")
+                .toString());
+        assertEquals("game 3, 5...: java.lang.IllegalStateException",
+            new PgnError(2, 10, null, "java.lang.IllegalStateException")
+                .toString());
+    }
+
+    @Test
+    public void reportsAMoveOffTheBoard() {
+        assertNull(replay("1. a1"));
+        assertEquals(1, errors.get(0).ply);
+        assertNotNull(errors.get(0).reason);
+    }
+}
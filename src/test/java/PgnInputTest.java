@@ -0,0 +1,177 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.airlift.compress.zstd.ZstdOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PgnInputTest {
+
+    private static final byte[] PGN = ("[Event \"test\"]\n\n1. e4 e5 2. Nf3"
+        + " Nc6 3. Bb5 a6 *\n\n").getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path dir;
+
+    private interface Compressor {
+        OutputStream wrap(OutputStream out) throws IOException;
+    }
+
+    private Path write(String name, byte[] content) throws IOException {
+        Path file = dir.resolve(name);
+        Files.write(file, content);
+        return file;
+    }
+
+    private static byte[] compress(byte[] content, Compressor compressor)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = compressor.wrap(bytes)) {
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1000];
+            int n;
+            while ((n = stream.read(buffer)) >= 0) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    // a large, poorly compressible PGN-like text
+    private static byte[] bulk(int size) {
+        byte[] content = new byte[size];
+        Random random = new Random(1);
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) ('a' + random.nextInt(26));
+        }
+        return content;
+    }
+
+    @Test
+    public void recognizesFormatsByContent() throws IOException {
+        Path[] files = {
+            write("plain.txt", PGN),
+            write("gzip.txt", compress(PGN, GZIPOutputStream::new)),
+            write("bzip2.txt", compress(PGN,
+                BZip2CompressorOutputStream::new)),
+            write("zstd.txt", compress(PGN, ZstdOutputStream::new))
+        };
+        for (Path file : files) {
+            assertArrayEquals(PGN, readAll(PgnInput.open(file)),
+                file.toString());
+            assertArrayEquals(PGN, readAll(PgnInput.openInBackground(file)),
+                file.toString());
+        }
+    }
+
+    @Test
+    public void readsFilesShorterThanAMagicNumber() throws IOException {
+        for (String content : new String[] {"", "*", "1.", "1-0"}) {
+            byte[] bytes = content.getBytes(StandardCharsets.ISO_8859_1);
+            Path file = write("short.pgn", bytes);
+            assertArrayEquals(bytes, readAll(PgnInput.open(file)));
+            assertArrayEquals(bytes, readAll(PgnInput.openInBackground(file)));
+        }
+    }
+
+    @Test
+    public void readsConcatenatedGzipMembers() throws IOException {
+        byte[] one = compress(PGN, GZIPOutputStream::new);
+        byte[] two = Arrays.copyOf(one, 2 * one.length);
+        System.arraycopy(one, 0, two, one.length, one.length);
+        byte[] expected = Arrays.copyOf(PGN, 2 * PGN.length);
+        System.arraycopy(PGN, 0, expected, PGN.length, PGN.length);
+        assertArrayEquals(expected,
+            readAll(PgnInput.openInBackground(write("two.pgn.gz", two))));
+    }
+
+    @Test
+    public void failsOnATruncatedGzipFile() throws IOException {
+        byte[] gzip = compress(bulk(1 << 20), GZIPOutputStream::new);
+        Path file = write("cut.pgn.gz",
+            Arrays.copyOf(gzip, gzip.length - 1000));
+        assertThrows(IOException.class, () -> readAll(PgnInput.open(file)));
+        // the background thread's failure reaches the reader after the
+        // data it did decompress
+        assertThrows(IOException.class,
+            () -> readAll(PgnInput.openInBackground(file)));
+    }
+
+    @Test
+    public void failsOnACorruptGzipFile() throws IOException {
+        byte[] gzip = compress(bulk(1 << 16), GZIPOutputStream::new);
+        for (int i = 20; i < gzip.length; i += 7) {
+            gzip[i] ^= 0x55;
+        }
+        Path file = write("bad.pgn.gz", gzip);
+        assertThrows(IOException.class,
+            () -> readAll(PgnInput.openInBackground(file)));
+    }
+
+    @Test
+    public void namesTheMissingLibrary() {
+        IOException e = assertThrows(IOException.class,
+            () -> PgnInput.codec("no.such.Bzip2Stream", "bzip2",
+                "commons-compress", new ByteArrayInputStream(PGN)));
+        assertEquals("bzip2 input needs commons-compress on the class path",
+            e.getMessage());
+    }
+
+    @Test
+    public void closingEarlyStopsTheBackgroundThread() throws Exception {
+        Path file = write("big.pgn.gz",
+            compress(bulk(4 << 20), GZIPOutputStream::new));
+        String name = "decompress " + file;
+        try (InputStream in = PgnInput.openInBackground(file)) {
+            assertTrue(in.read() >= 0);
+            assertTrue(running(name));
+        }
+        for (int i = 0; i < 100 && running(name); i++) {
+            Thread.sleep(20);
+        }
+        assertFalse(running(name));
+    }
+
+    private static boolean running(String name) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(name) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void recognizesPgnFileNames() {
+        for (String name : new String[] {"a.pgn", "b.PGN", "c.pgn.gz",
+            "d.pgn.bz2", "e.pgn.zst"}) {
+            assertTrue(PgnInput.isPgnFile(Paths.get("games", name)), name);
+        }
+        for (String name : new String[] {"a.txt", "b.gz", "pgn"}) {
+            assertFalse(PgnInput.isPgnFile(Paths.get(name)), name);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PgnMetricsTest {
+
+    private static final String PGN = "[Event \"a\"]\n\n1. e4 e5 2. Nf3 *\n\n"
+        + "[Event \"b\"]\n\n1. d4 d5 2. c4 dxc4 3. O-O *\n\n"
+        + "[Event \"c\"]\n\n1. c4 1-0\n";
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    public void turnOff() {
+        PgnMetrics.enabled = false; // as when the tests started
+        PgnMetrics.reset();
+    }
+
+    private static Object attribute(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        return server.getAttribute(new ObjectName(PgnMetrics.OBJECT_NAME),
+            name);
+    }
+
+    private static long count(String name) throws JMException {
+        return (Long) attribute(name);
+    }
+
+    private long runPipeline() throws IOException {
+        Path file = dir.resolve("a.pgn");
+        Files.write(file, PGN.getBytes(StandardCharsets.UTF_8));
+        List<PgnError> errors = new ArrayList<>();
+        new IngestPipeline(2, 4, 8, true).run(
+            Collections.singletonList(file), game -> { }, errors::add);
+        assertEquals(1, errors.size());
+        return Files.size(file);
+    }
+
+    @Test
+    public void enablingStartsTheCountsAndResetZeroesThem()
+        throws JMException {
+        PgnMetrics.enable();
+        assertTrue(PgnMetrics.isEnabled());
+        PgnMetrics.replayed(PgnMetrics.start(), 5);
+        PgnMetrics.moveType(0);
+        PgnMetrics.malformed();
+        assertEquals(1, count("Games"));
+        assertEquals(5, count("Plies"));
+        assertEquals(1, count("MalformedGames"));
+        assertEquals(1, ((long[]) attribute("MoveTypes"))[1]);
+
+        PgnMetrics.reset();
+        assertEquals(0, count("Games"));
+        assertEquals(0, count("Plies"));
+        assertEquals(0, count("MalformedGames"));
+        assertEquals(0, ((long[]) attribute("MoveTypes"))[1]);
+        assertTrue(PgnMetrics.summary().startsWith("pgn: 0 games,"));
+    }
+
+    @Test
+    public void registersTheMBeanOnce() throws JMException {
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(err, true));
+        try {
+            PgnMetrics.enable();
+            PgnMetrics.enable();
+        } finally {
+            System.setErr(stderr);
+        }
+        assertEquals("", err.toString());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(1, server.queryNames(
+            new ObjectName(PgnMetrics.OBJECT_NAME), null).size());
+        assertEquals(PgnMetrics.MOVE_TYPE_NAMES.length,
+            ((String[]) attribute("MoveTypeNames")).length);
+
+        PgnMetrics.replayed(PgnMetrics.start(), 1);
+        server.invoke(new ObjectName(PgnMetrics.OBJECT_NAME), "reset",
+            null, null);
+        assertEquals(0, count("Games"));
+    }
+
+    @Test
+    public void countsAPipelineRun() throws IOException, JMException {
+        PgnMetrics.enable();
+        PgnMetrics.reset();
+        long bytes = runPipeline();
+        assertEquals(2, count("Games"));
+        assertEquals(4, count("Plies"));
+        assertEquals(1, count("MalformedGames"));
+        assertEquals(bytes, count("Bytes"));
+        long[] types = (long[]) attribute("MoveTypes");
+        // the moves of the malformed game up to its bad move count too
+        assertEquals(6, types[1]); // e4 e5 c4, d4 d5 c4
+        assertEquals(1, types[3]); // dxc4
+        assertEquals(1, types[7]); // Nf3
+        assertTrue(PgnMetrics.moveTypeSummary()
+            .startsWith("pgn move types: pawn move 6,"));
+    }
+
+    @Test
+    public void countsNothingWhileDisabled() throws IOException, JMException {
+        PgnMetrics.enable(); // so that the MBean is there to read
+        PgnMetrics.enabled = false;
+        PgnMetrics.reset();
+        runPipeline();
+        assertFalse(PgnMetrics.isEnabled());
+        assertEquals(0, count("Games"));
+        assertEquals(0, count("Plies"));
+        assertEquals(0, count("MalformedGames"));
+        assertEquals(0, count("Bytes"));
+        for (long n : (long[]) attribute("MoveTypes")) {
+            assertEquals(0, n);
+        }
+    }
+
+    @Test
+    public void logsASummaryEveryPeriod() throws InterruptedException {
+        PgnMetrics.enable();
+        List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        PrintStream out = new PrintStream(new OutputStream() {
+            final StringBuilder line = new StringBuilder();
+
+            @Override
+            public void write(int b) {
+                if (b == '\n') {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                } else {
+                    line.append((char) b);
+                }
+            }
+        }, true);
+        PgnMetrics.replayed(PgnMetrics.start(), 3);
+        ScheduledExecutorService logger = PgnMetrics.startLogging(1, out);
+        try {
+            for (int i = 0; i < 100 && lines.size() < 2; i++) {
+                Thread.sleep(50);
+            }
+        } finally {
+            logger.shutdownNow();
+        }
+        assertTrue(logger.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(lines.size() >= 2, lines.toString());
+        // each line gives the rates over its own period
+        assertTrue(lines.get(0).startsWith("pgn: 1 games, 0 games/s,"),
+            lines.get(0));
+    }
+}
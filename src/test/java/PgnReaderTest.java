@@ -0,0 +1,27 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class PgnReaderTest {
+
+    @Test
+    public void replayVisitsEveryMove() {
+        String game = "[Event \"?\"]\n\n1. e4 {x} e5 2. Nf3 (2. f4) Nc6+ *";
+        List<String> moves = new ArrayList<>();
+        List<String> fens = new ArrayList<>();
+        String fen = PgnReader.replay(game, (ply, text, start, end, move,
+            board) -> {
+            assertEquals(moves.size() + 1, ply);
+            assertEquals(SanDecoder.decode(text, start, end), move);
+            moves.add(text.subSequence(start, end).toString());
+            fens.add(FenWriter.toFen(board));
+        });
+        assertEquals(Arrays.asList("e4", "e5", "Nf3", "Nc6+"), moves);
+        assertEquals(PgnReader.finalPosition(game), fen);
+        assertEquals("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq"
+            + " e3 0 1", fens.get(0));
+    }
+}
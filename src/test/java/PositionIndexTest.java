@@ -0,0 +1,94 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PositionIndexTest {
+
+    private static final String[] GAMES = {
+        "1. d4 Nf6 2. c4 e6 3. Nc3 Bb4 *",
+        "1. c4 Nf6 2. d4 e6 3. Nf3 d5 *",
+        "1. e4 e5 2. Nf3 Nc6 3. Ng1 Nb8 4. Nf3 Nc6 *",
+        "1. Nf3 Nf6 2. c4 e6 3. Nc3 d5 4. d4 Bb4 *"
+    };
+
+    @TempDir
+    Path dir;
+
+    private Path writeGames(long[] offsets) throws IOException {
+        StringBuilder pgn = new StringBuilder();
+        for (int i = 0; i < GAMES.length; i++) {
+            offsets[i] = pgn.length();
+            pgn.append("[Round \"").append(i).append("\"]\n\n")
+                .append(GAMES[i]).append("\n\n");
+        }
+        Path file = dir.resolve("games.pgn");
+        Files.write(file, pgn.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static long hash(String moves) {
+        Bitboard board = new Bitboard();
+        PgnReader.finalPosition(moves, board);
+        return board.hash();
+    }
+
+    @Test
+    public void findsGamesByPosition() throws IOException {
+        long[] offsets = new long[GAMES.length];
+        Path index = dir.resolve("games.idx");
+        PositionIndex.build(writeGames(offsets), index);
+        PositionIndex positions = new PositionIndex(index);
+
+        assertArrayEquals(new long[] {offsets[0], offsets[1]},
+            positions.gamesWith(hash("1. d4 Nf6 2. c4 e6")));
+        // repeated within a game, listed once
+        assertArrayEquals(new long[] {offsets[2]},
+            positions.gamesWith(hash("1. e4 e5 2. Nf3 Nc6")));
+        assertArrayEquals(new long[0], positions.gamesWith(hash("1. a4")));
+    }
+
+    @Test
+    public void mergedRunsMatchAnInMemorySort() throws IOException {
+        long[] offsets = new long[GAMES.length];
+        Path pgn = writeGames(offsets);
+        Path inMemory = dir.resolve("memory.idx");
+        Path merged = dir.resolve("merged.idx");
+        long n = PositionIndex.build(pgn, inMemory);
+        assertEquals(n, PositionIndex.build(pgn, merged, 5));
+        assertArrayEquals(Files.readAllBytes(inMemory),
+            Files.readAllBytes(merged));
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            assertEquals(3, files.count()); // no runs left behind
+        }
+    }
+
+    @Test
+    public void stopsAGameAtAnIllegalMove() throws IOException {
+        Path pgn = dir.resolve("illegal.pgn");
+        Files.write(pgn, ("1. e4 e5 2. Nf3 Ke7 3. Bc4 Kxe5 4. Nc3 *\n\n"
+            + "1. e4 e5 2. Nf3 Ke7 3. Bc4 Kd6 *\n").getBytes(
+                StandardCharsets.UTF_8));
+        Path index = dir.resolve("illegal.idx");
+        PositionIndex.build(pgn, index);
+        PositionIndex positions = new PositionIndex(index);
+
+        long second = "1. e4 e5 2. Nf3 Ke7 3. Bc4 Kxe5 4. Nc3 *\n\n".length();
+        assertArrayEquals(new long[] {0, second},
+            positions.gamesWith(hash("1. e4 e5 2. Nf3 Ke7 3. Bc4")));
+        assertArrayEquals(new long[] {second},
+            positions.gamesWith(hash("1. e4 e5 2. Nf3 Ke7 3. Bc4 Kd6")));
+        // a king capturing its own pawn, and the move after it
+        Bitboard board = new Bitboard();
+        PgnReader.finalPosition("1. e4 e5 2. Nf3 Ke7 3. Bc4", board);
+        board.apply(SanDecoder.decode("Kxe5"), Bitboard.BLACK);
+        assertArrayEquals(new long[0], positions.gamesWith(board.hash()));
+        board.apply(SanDecoder.decode("Nc3"), Bitboard.WHITE);
+        assertArrayEquals(new long[0], positions.gamesWith(board.hash()));
+    }
+}
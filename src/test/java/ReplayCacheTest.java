@@ -0,0 +1,95 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class ReplayCacheTest {
+
+    private static final String[] GAMES = {
+        "1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Ba4 Nf6 5. O-O Be7 6. Re1 b5 *",
+        "1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Bxc6 dxc6 5. O-O f6 *",
+        "1. e4 e5 2. Nf3 Nc6 3. Bc4 Bc5 4. c3 Nf6 5. d4 exd4 *",
+        "1. d4 d5 2. c4 e6 3. Nc3 Nf6 4. Bg5 Be7 *",
+        "1. e4 d5 2. e5 f5 3. exf6 Nxf6 4. d4 e6 *",
+        "1. e4 *"
+    };
+
+    @Test
+    public void cachedReplaysReachTheSamePositions() {
+        ReplayCache cache = new ReplayCache(1 << 10, 12);
+        for (int pass = 0; pass < 2; pass++) {
+            for (String game : GAMES) {
+                assertEquals(PgnReader.finalPosition(game),
+                    PgnReader.finalPosition(game, cache), game);
+            }
+        }
+        assertTrue(cache.hits() > 0);
+        assertEquals(2 * GAMES.length, cache.hits() + cache.misses());
+    }
+
+    @Test
+    public void restoresEveryPartOfThePosition() {
+        // white to move with an en passant capture possible
+        String game = "1. e4 Nf6 2. e5 d5 *";
+        Bitboard played = new Bitboard();
+        PgnReader.finalPosition(game, played);
+        ReplayCache cache = new ReplayCache(64, 4);
+        cache.put(1, 5, played);
+        Bitboard restored = new Bitboard();
+        assertTrue(cache.get(1, 5, restored));
+        assertEquals(FenWriter.toFen(played), FenWriter.toFen(restored));
+        assertEquals(played.hash(), restored.hash());
+        assertFalse(cache.get(2, 5, restored));
+    }
+
+    @Test
+    public void missesAKeyWhoseCheckWordDiffers() {
+        Bitboard played = new Bitboard();
+        PgnReader.finalPosition("1. d4 d5 *", played);
+        ReplayCache cache = new ReplayCache(64, 4);
+        cache.put(1, 5, played);
+        Bitboard board = new Bitboard();
+        assertFalse(cache.get(1, 6, board));
+        assertEquals(FenWriter.toFen(new Bitboard()), FenWriter.toFen(board));
+
+        // another sequence in the same slot evicts it
+        cache.put(1, 6, new Bitboard());
+        assertFalse(cache.get(1, 5, board));
+        assertTrue(cache.get(1, 6, board));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.evictions());
+    }
+
+    @Test
+    public void neverCachesPositionsAfterAnIllegalMove() {
+        ReplayCache cache = new ReplayCache(64, 4);
+        String illegal = "1. e4 e5 2. Ke3 Nc6 *";
+        PgnReader.finalPosition(illegal, cache);
+        assertEquals(0, cache.size());
+
+        List<PgnError> errors = new ArrayList<>();
+        assertNull(PgnReader.finalPosition(illegal, new Bitboard(), 7,
+            errors::add, cache));
+        assertEquals(1, errors.size());
+        assertEquals(3, errors.get(0).ply);
+        assertEquals("Ke3", errors.get(0).token);
+        assertEquals(PgnError.NO_PIECE, errors.get(0).reason);
+    }
+
+    @Test
+    public void reportsLikeTheUncachedReplay() {
+        ReplayCache cache = new ReplayCache(64, 8);
+        String game = "1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Bxc6 dxc6 5. Qxh7 *";
+        PgnReader.finalPosition(game, new Bitboard(), 0, e -> { }, cache);
+        List<PgnError> cached = new ArrayList<>();
+        List<PgnError> uncached = new ArrayList<>();
+        PgnReader.finalPosition(game, new Bitboard(), 0, cached::add, cache);
+        PgnReader.finalPosition(game, new Bitboard(), 0, uncached::add);
+        assertEquals(1, cache.hits());
+        assertEquals(uncached.toString(), cached.toString());
+    }
+}
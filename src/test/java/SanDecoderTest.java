@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+public class SanDecoderTest {
+
+    private static int square(String name) {
+        return Bitboard.square('8' - name.charAt(1), name.charAt(0) - 'a');
+    }
+
+    @Test
+    public void decodesPieceMoves() {
+        int move = SanDecoder.decode("Nf3");
+        assertEquals(Bitboard.KNIGHT, SanDecoder.pieceType(move));
+        assertEquals(square("f3"), SanDecoder.to(move));
+        assertEquals(-1, SanDecoder.fromCol(move));
+        assertEquals(-1, SanDecoder.fromRow(move));
+        assertFalse(SanDecoder.isCapture(move));
+    }
+
+    @Test
+    public void decodesOriginHints() {
+        int move = SanDecoder.decode("R1xa3+");
+        assertEquals(Bitboard.ROOK, SanDecoder.pieceType(move));
+        assertEquals(-1, SanDecoder.fromCol(move));
+        assertEquals(7, SanDecoder.fromRow(move));
+        assertTrue(SanDecoder.isCapture(move));
+        assertTrue(SanDecoder.isCheck(move));
+
+        move = SanDecoder.decode("Qh4e1#");
+        assertEquals(7, SanDecoder.fromCol(move));
+        assertEquals(4, SanDecoder.fromRow(move));
+        assertTrue(SanDecoder.isMate(move));
+    }
+
+    @Test
+    public void decodesPawnMovesAndPromotions() {
+        int move = SanDecoder.decode("exd6");
+        assertEquals(Bitboard.PAWN, SanDecoder.pieceType(move));
+        assertEquals(4, SanDecoder.fromCol(move));
+        assertEquals(square("d6"), SanDecoder.to(move));
+
+        move = SanDecoder.decode("b8=Q");
+        assertEquals(Bitboard.QUEEN, SanDecoder.promotion(move));
+        assertEquals(square("b8"), SanDecoder.to(move));
+    }
+
+    @Test
+    public void decodesCastling() {
+        assertTrue(SanDecoder.isKingSideCastle(SanDecoder.decode("O-O")));
+        int move = SanDecoder.decode("0-0-0+");
+        assertTrue(SanDecoder.isCastle(move));
+        assertFalse(SanDecoder.isKingSideCastle(move));
+    }
+
+    @Test
+    public void ignoresAnnotations() {
+        assertEquals(SanDecoder.decode("Nf3"), SanDecoder.decode("Nf3!?"));
+        assertEquals(SanDecoder.decode("exd6"),
+            SanDecoder.decode("exd6e.p."));
+    }
+
+    @Test
+    public void rejectsNonMoves() {
+        for (String token : new String[] {"", "1-0", "Nf9", "Xe4", "e",
+            "Ke"}) {
+            assertEquals(SanDecoder.INVALID, SanDecoder.decode(token),
+                token);
+        }
+    }
+
+    @Test
+    public void decodesBytesLikeChars() {
+        String text = "1. Nbxd2+ O-O";
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        assertEquals(SanDecoder.decode(text, 3, 9),
+            SanDecoder.decode(bytes, 3, 9));
+        assertEquals(SanDecoder.decode(text, 10, 13),
+            SanDecoder.decode(bytes, 10, 13));
+    }
+}
@@ -0,0 +1,69 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class ZobristTest {
+
+    private static long hash(String game) {
+        Bitboard board = new Bitboard();
+        PgnReader.finalPosition(game, board);
+        return board.hash();
+    }
+
+    @Test
+    public void incrementalHashMatchesAFreshOne() {
+        Bitboard board = new Bitboard();
+        PgnReader.finalPosition("1. e4 d5 2. exd5 Qxd5 3. Nc3"
+            + " Qa5 4. d4 c6 5. Nf3 Bf5 6. Bc4 e6 7. O-O Nf6 8. Bd2 Bb4",
+            board);
+        assertEquals(Bitboard.fromFen(FenWriter.toFen(board)).hash(),
+            board.hash());
+    }
+
+    @Test
+    public void transposedMoveOrdersHashTheSame() {
+        assertEquals(hash("1. Nf3 Nf6 2. Nc3 Nc6"),
+            hash("1. Nc3 Nc6 2. Nf3 Nf6"));
+    }
+
+    @Test
+    public void doublePushWithoutCaptureDoesNotChangeTheHash() {
+        assertEquals(hash("1. d4 Nf6 2. c4"), hash("1. c4 Nf6 2. d4"));
+        assertEquals(Bitboard.fromFen("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/"
+            + "RNBQKBNR b KQkq - 0 1").hash(), hash("1. e4"));
+    }
+
+    @Test
+    public void possibleEnPassantChangesTheHash() {
+        String fen = "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w"
+            + " KQkq %s 0 3";
+        long hash = hash("1. e4 d5 2. e5 f5");
+        assertEquals(Bitboard.fromFen(String.format(fen, "f6")).hash(),
+            hash);
+        assertNotEquals(Bitboard.fromFen(String.format(fen, "-")).hash(),
+            hash);
+    }
+
+    @Test
+    public void sideToMoveAndCastlingRightsChangeTheHash() {
+        // the same squares, but Black to move
+        assertNotEquals(hash("1. Nf3 Nf6 2. Ng1 Ng8"),
+            hash("1. Nf3 Nf6 2. Ng1"));
+        // the same squares, but White has given up castling
+        assertNotEquals(hash(""), hash("1. e4 e5 2. Ke2 Ke7 3. Ke1 Ke8"));
+    }
+
+    @Test
+    public void unmakeRestoresTheHash() {
+        Bitboard board = Bitboard.fromFen(Perft.FENS[1]);
+        long hash = board.hash();
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int n = MoveGenerator.generate(board, moves);
+        for (int i = 0; i < n; i++) {
+            board.makeMove(moves[i]);
+            board.unmakeMove();
+            assertEquals(hash, board.hash());
+        }
+    }
+}